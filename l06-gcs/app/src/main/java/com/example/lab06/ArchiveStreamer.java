@@ -0,0 +1,284 @@
+package com.example.lab06;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Streams every object under a prefix into a zip or tar written straight to the response.
+// The next few objects are fetched in parallel into small bounded queues while the
+// current one is being archived, so GCS latency overlaps with compression and nothing
+// is materialized in memory or on disk.
+@Component
+public class ArchiveStreamer {
+
+  public enum Format { ZIP, TAR }
+
+  private static final Object END = new Object();
+
+  private final Storage storage;
+  private final BufferPool buffers;
+  private final int readAhead;
+  private final int buffersPerObject;
+  private final int zipLevel;
+  private final ExecutorService fetchExecutor;
+
+  public ArchiveStreamer(Storage storage, BufferPool buffers,
+                         @Value("${gcs.archive.read-ahead}") int readAhead,
+                         @Value("${gcs.archive.buffers-per-object}") int buffersPerObject,
+                         @Value("${gcs.archive.zip-level}") int zipLevel,
+                         @Value("${gcs.archive.threads}") int threads) {
+    this.storage = storage;
+    this.buffers = buffers;
+    this.readAhead = Math.max(1, readAhead);
+    this.buffersPerObject = Math.max(1, buffersPerObject);
+    this.zipLevel = zipLevel;
+    this.fetchExecutor = Executors.newFixedThreadPool(Math.max(1, threads));
+  }
+
+  @PreDestroy
+  void shutdown() {
+    fetchExecutor.shutdownNow();
+  }
+
+  // Returns the number of objects written
+  public int write(String bucket, String prefix, Format format, OutputStream out) throws IOException {
+    Iterator<Blob> blobs = storage.list(bucket,
+        Storage.BlobListOption.prefix(prefix),
+        Storage.BlobListOption.fields(
+            Storage.BlobField.NAME,
+            Storage.BlobField.SIZE,
+            Storage.BlobField.UPDATED,
+            Storage.BlobField.GENERATION))
+        .iterateAll().iterator();
+
+    Deque<Prefetch> window = new ArrayDeque<>();
+    ArchiveSink sink = format == Format.TAR ? new TarSink(out) : new ZipSink(out, zipLevel);
+    int count = 0;
+    try {
+      fill(window, blobs, bucket);
+      while (!window.isEmpty()) {
+        Prefetch next = window.removeFirst();
+        try {
+          sink.begin(next.blob);
+          next.copyTo(sink.stream());
+          sink.end();
+        } finally {
+          next.cancel();
+        }
+        count++;
+        fill(window, blobs, bucket);
+      }
+      sink.finish();
+      return count;
+    } finally {
+      // Client gone or fetch failed: stop the remaining fetchers and return their buffers
+      for (Prefetch pending : window) {
+        pending.cancel();
+      }
+    }
+  }
+
+  private void fill(Deque<Prefetch> window, Iterator<Blob> blobs, String bucket) {
+    while (window.size() < readAhead && blobs.hasNext()) {
+      Blob blob = blobs.next();
+      if (blob.isDirectory()) {
+        continue;
+      }
+      Prefetch prefetch = new Prefetch(BlobId.of(bucket, blob.getName(), blob.getGeneration()), blob);
+      window.addLast(prefetch);
+      fetchExecutor.execute(prefetch);
+    }
+  }
+
+  // Reads one object into a bounded queue of pooled buffers
+  private final class Prefetch implements Runnable {
+
+    private final BlobId blobId;
+    private final Blob blob;
+    private final BlockingQueue<Object> chunks = new ArrayBlockingQueue<>(buffersPerObject + 1);
+    private volatile boolean cancelled;
+
+    Prefetch(BlobId blobId, Blob blob) {
+      this.blobId = blobId;
+      this.blob = blob;
+    }
+
+    @Override
+    public void run() {
+      try (ReadChannel reader = storage.reader(blobId)) {
+        reader.setChunkSize(buffers.bufferSize());
+        while (!cancelled) {
+          ByteBuffer buffer = buffers.acquire();
+          if (reader.read(buffer) < 0) {
+            buffers.release(buffer);
+            break;
+          }
+          buffer.flip();
+          put(buffer);
+        }
+        put(END);
+      } catch (Exception e) {
+        put(e);
+      }
+    }
+
+    private void put(Object item) {
+      try {
+        while (!cancelled) {
+          if (chunks.offer(item, 100, TimeUnit.MILLISECONDS)) {
+            return;
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (item instanceof ByteBuffer buffer) {
+        buffers.release(buffer);
+      }
+    }
+
+    void copyTo(OutputStream out) throws IOException {
+      long copied = 0;
+      while (true) {
+        Object item;
+        try {
+          item = chunks.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while archiving " + blob.getName());
+        }
+        if (item == END) {
+          break;
+        }
+        if (item instanceof Exception e) {
+          throw new IOException("Failed to read " + blob.getName(), e);
+        }
+        ByteBuffer buffer = (ByteBuffer) item;
+        try {
+          out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+          copied += buffer.remaining();
+        } finally {
+          buffers.release(buffer);
+        }
+      }
+      // The tar header already promised this size
+      if (blob.getSize() != null && copied != blob.getSize()) {
+        throw new IOException("Size of " + blob.getName() + " changed while archiving");
+      }
+    }
+
+    void cancel() {
+      cancelled = true;
+      Object item;
+      while ((item = chunks.poll()) != null) {
+        if (item instanceof ByteBuffer buffer) {
+          buffers.release(buffer);
+        }
+      }
+    }
+  }
+
+  private interface ArchiveSink {
+    void begin(Blob blob) throws IOException;
+
+    OutputStream stream();
+
+    void end() throws IOException;
+
+    void finish() throws IOException;
+  }
+
+  private static final class ZipSink implements ArchiveSink {
+    private final ZipOutputStream zip;
+
+    ZipSink(OutputStream out, int level) {
+      this.zip = new ZipOutputStream(out);
+      this.zip.setLevel(level);
+    }
+
+    @Override
+    public void begin(Blob blob) throws IOException {
+      ZipEntry entry = new ZipEntry(blob.getName());
+      if (blob.getUpdateTimeOffsetDateTime() != null) {
+        entry.setTime(blob.getUpdateTimeOffsetDateTime().toInstant().toEpochMilli());
+      }
+      zip.putNextEntry(entry);
+    }
+
+    @Override
+    public OutputStream stream() {
+      return zip;
+    }
+
+    @Override
+    public void end() throws IOException {
+      zip.closeEntry();
+      zip.flush();
+    }
+
+    @Override
+    public void finish() throws IOException {
+      zip.finish();
+    }
+  }
+
+  private static final class TarSink implements ArchiveSink {
+    private final TarArchiveOutputStream tar;
+
+    TarSink(OutputStream out) {
+      this.tar = new TarArchiveOutputStream(out);
+      this.tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+      this.tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+    }
+
+    @Override
+    public void begin(Blob blob) throws IOException {
+      TarArchiveEntry entry = new TarArchiveEntry(blob.getName());
+      entry.setSize(blob.getSize() == null ? 0 : blob.getSize());
+      if (blob.getUpdateTimeOffsetDateTime() != null) {
+        entry.setModTime(Date.from(blob.getUpdateTimeOffsetDateTime().toInstant()));
+      }
+      tar.putArchiveEntry(entry);
+    }
+
+    @Override
+    public OutputStream stream() {
+      return tar;
+    }
+
+    @Override
+    public void end() throws IOException {
+      tar.closeArchiveEntry();
+      tar.flush();
+    }
+
+    @Override
+    public void finish() throws IOException {
+      tar.finish();
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package com.example.lab06;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Fixed-size heap buffers shared by all streaming requests.
+// Memory per request stays at one buffer no matter how big the object is.
+@Component
+public class BufferPool {
+
+  private final int bufferSize;
+  private final BlockingQueue<ByteBuffer> free;
+
+  public BufferPool(@Value("${gcs.stream.buffer-size}") int bufferSize,
+                    @Value("${gcs.stream.pooled-buffers}") int pooledBuffers) {
+    this.bufferSize = bufferSize;
+    this.free = new ArrayBlockingQueue<>(Math.max(1, pooledBuffers));
+  }
+
+  public ByteBuffer acquire() {
+    ByteBuffer buffer = free.poll();
+    // Pool empty under load: hand out a fresh buffer, it is dropped on release if the pool is full
+    return buffer != null ? buffer : ByteBuffer.allocate(bufferSize);
+  }
+
+  public void release(ByteBuffer buffer) {
+    buffer.clear();
+    free.offer(buffer);
+  }
+
+  public int bufferSize() {
+    return bufferSize;
+  }
+}
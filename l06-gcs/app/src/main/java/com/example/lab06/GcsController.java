@@ -1,27 +1,67 @@
 package com.example.lab06;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.gax.paging.Page;
 import com.google.cloud.storage.Blob;
 import com.google.cloud.storage.BlobId;
 import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.HttpMethod;
 import com.google.cloud.storage.Storage;
-import com.google.cloud.storage.StorageOptions;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
 public class GcsController {
 
-  // Cloud Storage client is thread-safe and should be reused
-  // Uses Application Default Credentials (service account when running on Cloud Run)
-  private final Storage storage = StorageOptions.getDefaultInstance().getService();
+  private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
 
-  private final String bucketName = System.getenv().getOrDefault("BUCKET_NAME", "");
+  // GCS returns at most 1000 objects per list page
+  private static final int MAX_PAGE_SIZE = 1000;
+
+  private final Storage storage;
+  private final ObjectStreamer streamer;
+  private final ObjectUploader uploader;
+  private final ObjectCache cache;
+  private final UrlSigner signer;
+  private final ArchiveStreamer archiver;
+  private final ObjectMapper objectMapper;
+  private final String bucketName;
+
+  public GcsController(Storage storage, ObjectStreamer streamer, ObjectUploader uploader,
+                       ObjectCache cache, UrlSigner signer, ArchiveStreamer archiver,
+                       ObjectMapper objectMapper, @Value("${gcs.bucket}") String bucketName) {
+    this.storage = storage;
+    this.streamer = streamer;
+    this.uploader = uploader;
+    this.cache = cache;
+    this.signer = signer;
+    this.archiver = archiver;
+    this.objectMapper = objectMapper;
+    this.bucketName = bucketName;
+  }
 
   @GetMapping("/")
   public Map<String, Object> root() {
@@ -31,7 +71,11 @@ public class GcsController {
         "endpoints", Map.of(
             "write", "GET /gcs/write?content=...",
             "read", "GET /gcs/read?name=...",
-            "list", "GET /gcs/list"
+            "download", "GET /gcs/objects/{name} (streaming, supports Range)",
+            "upload", "PUT /gcs/objects/{name} (streaming body, ?composite=true for parallel parts)",
+            "upload-url", "GET /gcs/upload-url?name=...&contentType=... (signed PUT URL)",
+            "archive", "GET /gcs/archive?prefix=...&format=zip|tar",
+            "list", "GET /gcs/list?prefix=...&delimiter=/&pageSize=...&pageToken=... (format=ndjson to stream all pages)"
         )
     );
   }
@@ -59,6 +103,7 @@ public class GcsController {
         .build();
 
     storage.create(blobInfo, fileContent.getBytes(StandardCharsets.UTF_8));
+    cache.invalidate(bucketName, name);
 
     return Map.of(
         "bucket", bucketName,
@@ -68,16 +113,17 @@ public class GcsController {
     );
   }
 
+  // Served through the read-through cache; see ObjectCache for tiers and revalidation
   @GetMapping("/gcs/read")
-  public Map<String, Object> read(@RequestParam(defaultValue = "hello.txt") String name) {
+  public Map<String, Object> read(@RequestParam(defaultValue = "hello.txt") String name) throws IOException {
 
     if (bucketName.isEmpty()) {
       return Map.of("error", "BUCKET_NAME env var not set");
     }
 
-    Blob blob = storage.get(BlobId.of(bucketName, name));
+    ObjectCache.CachedObject object = cache.get(bucketName, name);
 
-    if (blob == null) {
+    if (object == null) {
       return Map.of(
           "bucket", bucketName,
           "object", name,
@@ -85,36 +131,343 @@ public class GcsController {
       );
     }
 
-    String content = new String(blob.getContent(), StandardCharsets.UTF_8);
-
     return Map.of(
         "bucket", bucketName,
         "object", name,
         "found", true,
-        "content", content,
-        "size", blob.getSize()
+        "content", object.text(),
+        "size", object.size(),
+        "cache", object.hit() ? "hit" : "miss"
     );
   }
 
+  @GetMapping("/gcs/cache/stats")
+  public Map<String, Object> cacheStats() {
+    Map<String, Object> stats = new LinkedHashMap<>(cache.stats());
+    stats.put("signedUrls", signer.stats());
+    return stats;
+  }
+
+  // Hands out a signed PUT URL so the client uploads straight to GCS.
+  // Only names under gcs.signed-url.prefix can be signed.
+  @GetMapping("/gcs/upload-url")
+  public ResponseEntity<Map<String, Object>> uploadUrl(@RequestParam String name,
+                                                       @RequestParam(defaultValue = "application/octet-stream") String contentType) {
+
+    if (bucketName.isEmpty()) {
+      return ResponseEntity.internalServerError().body(Map.of("error", "BUCKET_NAME env var not set"));
+    }
+    if (!signer.allows(name)) {
+      return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", "Object name not allowed: " + name));
+    }
+
+    BlobInfo blobInfo = BlobInfo.newBuilder(BlobId.of(bucketName, name))
+        .setContentType(contentType)
+        .build();
+    UrlSigner.SignedUrl signed = signer.sign(blobInfo, HttpMethod.PUT);
+
+    return ResponseEntity.ok(Map.of(
+        "bucket", bucketName,
+        "object", name,
+        "method", "PUT",
+        "url", signed.uri().toString(),
+        "headers", Map.of(HttpHeaders.CONTENT_TYPE, contentType),
+        "expiresAt", signed.expiresAt().toString()
+    ));
+  }
+
+  // One page per call: pass nextPageToken back as pageToken to continue.
+  // Only name/size/updated are requested from GCS.
   @GetMapping("/gcs/list")
-  public Map<String, Object> list() {
+  public Map<String, Object> list(@RequestParam(defaultValue = "") String prefix,
+                                  @RequestParam(defaultValue = "") String delimiter,
+                                  @RequestParam(defaultValue = "") String pageToken,
+                                  @RequestParam(defaultValue = "1000") int pageSize) {
 
     if (bucketName.isEmpty()) {
       return Map.of("error", "BUCKET_NAME env var not set");
     }
 
-    var objects = storage.list(bucketName).streamAll()
-        .map(blob -> Map.of(
-            "name", blob.getName(),
-            "size", blob.getSize(),
-            "updated", blob.getUpdateTimeOffsetDateTime().toString()
-        ))
-        .toList();
+    Page<Blob> page = storage.list(bucketName, listOptions(prefix, delimiter, pageToken, pageSize));
 
-    return Map.of(
+    List<Map<String, Object>> objects = new ArrayList<>();
+    List<String> prefixes = new ArrayList<>();
+    for (Blob blob : page.getValues()) {
+      if (blob.isDirectory()) {
+        prefixes.add(blob.getName());
+      } else {
+        objects.add(listEntry(blob));
+      }
+    }
+
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("bucket", bucketName);
+    body.put("count", objects.size());
+    body.put("objects", objects);
+    if (!delimiter.isEmpty()) {
+      body.put("prefixes", prefixes);
+    }
+    if (page.hasNextPage()) {
+      body.put("nextPageToken", page.getNextPageToken());
+    }
+    return body;
+  }
+
+  // NDJSON mode: walks every page and writes it to the client as soon as it arrives,
+  // so time-to-first-byte doesn't depend on bucket size
+  @GetMapping(value = "/gcs/list", params = "format=ndjson")
+  public ResponseEntity<StreamingResponseBody> listStream(@RequestParam(defaultValue = "") String prefix,
+                                                          @RequestParam(defaultValue = "") String delimiter,
+                                                          @RequestParam(defaultValue = "") String pageToken,
+                                                          @RequestParam(defaultValue = "1000") int pageSize) {
+
+    if (bucketName.isEmpty()) {
+      return ResponseEntity.internalServerError().build();
+    }
+
+    StreamingResponseBody body = out -> {
+      Page<Blob> page = storage.list(bucketName, listOptions(prefix, delimiter, pageToken, pageSize));
+      while (page != null) {
+        for (Blob blob : page.getValues()) {
+          Map<String, Object> line = blob.isDirectory() ? Map.of("prefix", blob.getName()) : listEntry(blob);
+          out.write(objectMapper.writeValueAsBytes(line));
+          out.write('\n');
+        }
+        out.flush();
+        page = page.getNextPage();
+      }
+    };
+
+    return ResponseEntity.ok()
+        .contentType(NDJSON)
+        .body(body);
+  }
+
+  // Everything under a prefix as one zip/tar, streamed while the objects are fetched
+  @GetMapping("/gcs/archive")
+  public ResponseEntity<StreamingResponseBody> archive(@RequestParam(defaultValue = "") String prefix,
+                                                       @RequestParam(defaultValue = "zip") String format) {
+
+    if (bucketName.isEmpty()) {
+      return ResponseEntity.internalServerError().build();
+    }
+
+    ArchiveStreamer.Format archiveFormat;
+    try {
+      archiveFormat = ArchiveStreamer.Format.valueOf(format.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().build();
+    }
+
+    String baseName = prefix.isEmpty() ? bucketName : prefix.replaceAll("/+$", "").replace('/', '_');
+    String extension = archiveFormat == ArchiveStreamer.Format.TAR ? ".tar" : ".zip";
+    MediaType contentType = archiveFormat == ArchiveStreamer.Format.TAR
+        ? MediaType.parseMediaType("application/x-tar")
+        : MediaType.parseMediaType("application/zip");
+
+    StreamingResponseBody body = out -> archiver.write(bucketName, prefix, archiveFormat, out);
+
+    return ResponseEntity.ok()
+        .contentType(contentType)
+        .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+            .filename(baseName + extension)
+            .build()
+            .toString())
+        .body(body);
+  }
+
+  private static Storage.BlobListOption[] listOptions(String prefix, String delimiter,
+                                                      String pageToken, int pageSize) {
+    List<Storage.BlobListOption> options = new ArrayList<>();
+    options.add(Storage.BlobListOption.pageSize(Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE))));
+    options.add(Storage.BlobListOption.fields(
+        Storage.BlobField.NAME, Storage.BlobField.SIZE, Storage.BlobField.UPDATED));
+    if (!prefix.isEmpty()) {
+      options.add(Storage.BlobListOption.prefix(prefix));
+    }
+    if (!delimiter.isEmpty()) {
+      options.add(Storage.BlobListOption.delimiter(delimiter));
+    }
+    if (!pageToken.isEmpty()) {
+      options.add(Storage.BlobListOption.pageToken(pageToken));
+    }
+    return options.toArray(Storage.BlobListOption[]::new);
+  }
+
+  private static Map<String, Object> listEntry(Blob blob) {
+    Map<String, Object> entry = new LinkedHashMap<>();
+    entry.put("name", blob.getName());
+    entry.put("size", blob.getSize());
+    entry.put("updated", blob.getUpdateTimeOffsetDateTime() != null
+        ? blob.getUpdateTimeOffsetDateTime().toString()
+        : null);
+    return entry;
+  }
+
+  // Streams the object body instead of loading it into memory.
+  // ETag is the object generation, so If-None-Match maps to "same generation".
+  // In redirect mode the client gets a 302 to a signed URL and the bytes skip this service;
+  // only existing objects under the signed URL prefix are redirected.
+  @GetMapping("/gcs/objects/{*name}")
+  public ResponseEntity<StreamingResponseBody> download(@PathVariable String name,
+                                                        @RequestParam(defaultValue = "${gcs.download.redirect}") boolean redirect,
+                                                        @RequestHeader HttpHeaders headers) {
+
+    if (bucketName.isEmpty()) {
+      return ResponseEntity.internalServerError().build();
+    }
+
+    String objectName = objectName(name);
+
+    if (redirect) {
+      if (!signer.allows(objectName)) {
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+      }
+      if (storage.get(BlobId.of(bucketName, objectName),
+          Storage.BlobGetOption.fields(Storage.BlobField.GENERATION)) == null) {
+        return ResponseEntity.notFound().build();
+      }
+      UrlSigner.SignedUrl signed = signer.sign(
+          BlobInfo.newBuilder(BlobId.of(bucketName, objectName)).build(), HttpMethod.GET);
+      return ResponseEntity.status(HttpStatus.FOUND)
+          .location(signed.uri())
+          .cacheControl(CacheControl.maxAge(signed.freshFor()).cachePrivate())
+          .build();
+    }
+
+    // Metadata-only call: no object bytes are fetched here
+    Blob blob = storage.get(BlobId.of(bucketName, objectName),
+        Storage.BlobGetOption.fields(
+            Storage.BlobField.SIZE,
+            Storage.BlobField.CONTENT_TYPE,
+            Storage.BlobField.GENERATION,
+            Storage.BlobField.ETAG));
+
+    if (blob == null) {
+      return ResponseEntity.notFound().build();
+    }
+
+    String etag = etagOf(blob);
+    if (etag != null && matches(headers.getIfNoneMatch(), etag)) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    long size = blob.getSize() == null ? 0 : blob.getSize();
+    long start = 0;
+    long end = size - 1;
+    boolean partial = false;
+
+    List<HttpRange> ranges;
+    try {
+      ranges = headers.getRange();
+    } catch (IllegalArgumentException e) {
+      return rangeNotSatisfiable(size);
+    }
+
+    // Multiple ranges would need multipart/byteranges; serve the whole object instead
+    if (ranges.size() == 1) {
+      HttpRange range = ranges.get(0);
+      start = range.getRangeStart(size);
+      end = range.getRangeEnd(size);
+      if (start >= size || start > end) {
+        return rangeNotSatisfiable(size);
+      }
+      partial = true;
+    }
+
+    // Pin the generation so an overwrite mid-download can't mix two versions
+    BlobId source = BlobId.of(bucketName, objectName, blob.getGeneration());
+    long from = start;
+    long to = end + 1;
+    StreamingResponseBody body = out -> {
+      if (to > from) {
+        streamer.copy(source, from, to, out);
+      }
+    };
+
+    ResponseEntity.BodyBuilder response = ResponseEntity
+        .status(partial ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK)
+        .contentType(contentTypeOf(blob))
+        .contentLength(to - from)
+        .header(HttpHeaders.ACCEPT_RANGES, "bytes");
+    if (partial) {
+      response.header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+    }
+    if (etag != null) {
+      response.eTag(etag);
+    }
+    return response.body(body);
+  }
+
+  // Streams the request body into GCS; the payload is never held in heap.
+  // composite=true uploads parts in parallel and composes them into the final object.
+  @PutMapping("/gcs/objects/{*name}")
+  public ResponseEntity<Map<String, Object>> upload(@PathVariable String name,
+                                                    @RequestParam(defaultValue = "false") boolean composite,
+                                                    @RequestHeader HttpHeaders headers,
+                                                    InputStream body) throws IOException {
+
+    if (bucketName.isEmpty()) {
+      return ResponseEntity.internalServerError().body(Map.of("error", "BUCKET_NAME env var not set"));
+    }
+
+    String objectName = objectName(name);
+    MediaType contentType = headers.getContentType() != null
+        ? headers.getContentType()
+        : MediaType.APPLICATION_OCTET_STREAM;
+    BlobInfo blobInfo = BlobInfo.newBuilder(BlobId.of(bucketName, objectName))
+        .setContentType(contentType.toString())
+        .build();
+
+    ObjectUploader.Result result = composite
+        ? uploader.uploadComposite(blobInfo, body)
+        : uploader.upload(blobInfo, body);
+    cache.invalidate(bucketName, objectName);
+
+    return ResponseEntity.status(HttpStatus.CREATED).body(Map.of(
         "bucket", bucketName,
-        "count", objects.size(),
-        "objects", objects
-    );
+        "object", objectName,
+        "written", true,
+        "size", result.size(),
+        "parts", result.parts()
+    ));
+  }
+
+  // {*name} captures the rest of the path (with a leading slash) so names can contain "/"
+  private static String objectName(String pathName) {
+    return pathName.startsWith("/") ? pathName.substring(1) : pathName;
+  }
+
+  private static String etagOf(Blob blob) {
+    if (blob.getGeneration() != null) {
+      return "\"" + blob.getGeneration() + "\"";
+    }
+    return blob.getEtag() != null ? "\"" + blob.getEtag() + "\"" : null;
+  }
+
+  private static boolean matches(List<String> ifNoneMatch, String etag) {
+    for (String candidate : ifNoneMatch) {
+      String value = candidate.startsWith("W/") ? candidate.substring(2) : candidate;
+      if (value.equals("*") || value.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static MediaType contentTypeOf(Blob blob) {
+    try {
+      return blob.getContentType() != null
+          ? MediaType.parseMediaType(blob.getContentType())
+          : MediaType.APPLICATION_OCTET_STREAM;
+    } catch (IllegalArgumentException e) {
+      return MediaType.APPLICATION_OCTET_STREAM;
+    }
+  }
+
+  private static ResponseEntity<StreamingResponseBody> rangeNotSatisfiable(long size) {
+    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+        .build();
   }
 }
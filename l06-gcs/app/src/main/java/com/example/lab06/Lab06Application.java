@@ -2,10 +2,21 @@ package com.example.lab06;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
 
 @SpringBootApplication
 public class Lab06Application {
   public static void main(String[] args) {
     SpringApplication.run(Lab06Application.class, args);
   }
+
+  // Cloud Storage client is thread-safe and should be reused
+  // Uses Application Default Credentials (service account when running on Cloud Run)
+  @Bean
+  public Storage storage() {
+    return StorageOptions.getDefaultInstance().getService();
+  }
 }
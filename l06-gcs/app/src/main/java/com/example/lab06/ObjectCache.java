@@ -0,0 +1,272 @@
+package com.example.lab06;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Read-through cache for hot objects: small ones in an in-heap LRU, larger ones
+// memory-mapped from local disk. Both tiers are capped in bytes, not entries.
+// Entries are revalidated with a metadata-only get (generation check) once the TTL expires.
+@Component
+public class ObjectCache {
+
+  private final Storage storage;
+  private final ObjectStreamer streamer;
+  private final long heapMaxObjectSize;
+  private final long diskMaxObjectSize;
+  private final long ttlMillis;
+  private final Path diskDir;
+
+  private final Tier heap;
+  private final Tier disk;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder revalidations = new LongAdder();
+
+  public ObjectCache(Storage storage, ObjectStreamer streamer,
+                     @Value("${gcs.cache.heap.max-bytes}") long heapMaxBytes,
+                     @Value("${gcs.cache.heap.max-object-size}") long heapMaxObjectSize,
+                     @Value("${gcs.cache.disk.max-bytes}") long diskMaxBytes,
+                     @Value("${gcs.cache.disk.max-object-size}") long diskMaxObjectSize,
+                     @Value("${gcs.cache.disk.dir:}") String diskDir,
+                     @Value("${gcs.cache.ttl}") Duration ttl) throws IOException {
+    this.storage = storage;
+    this.streamer = streamer;
+    this.heapMaxObjectSize = heapMaxObjectSize;
+    this.diskMaxObjectSize = diskMaxObjectSize;
+    this.ttlMillis = ttl.toMillis();
+    this.diskDir = diskDir.isEmpty()
+        ? Files.createTempDirectory("gcs-cache")
+        : Files.createDirectories(Path.of(diskDir));
+    this.heap = new Tier(heapMaxBytes);
+    this.disk = new Tier(diskMaxBytes);
+  }
+
+  @PreDestroy
+  void clear() {
+    heap.clear();
+    disk.clear();
+  }
+
+  // Returns null when the object doesn't exist
+  public CachedObject get(String bucket, String name) throws IOException {
+    String key = bucket + "/" + name;
+    long now = System.currentTimeMillis();
+
+    Entry entry = heap.get(key);
+    if (entry == null) {
+      entry = disk.get(key);
+    }
+    if (entry != null && now - entry.validatedAt < ttlMillis) {
+      hits.increment();
+      return entry.toObject(true);
+    }
+
+    // Metadata only: no object bytes unless the generation changed
+    Blob meta = storage.get(BlobId.of(bucket, name),
+        Storage.BlobGetOption.fields(
+            Storage.BlobField.GENERATION,
+            Storage.BlobField.SIZE,
+            Storage.BlobField.CONTENT_TYPE,
+            Storage.BlobField.UPDATED));
+    if (meta == null) {
+      invalidate(key);
+      return null;
+    }
+
+    String version = versionOf(meta);
+    if (entry != null && entry.version.equals(version)) {
+      entry.validatedAt = now;
+      revalidations.increment();
+      hits.increment();
+      return entry.toObject(true);
+    }
+
+    misses.increment();
+    invalidate(key);
+    return load(key, BlobId.of(bucket, name, meta.getGeneration()), meta, version, now);
+  }
+
+  public void invalidate(String bucket, String name) {
+    invalidate(bucket + "/" + name);
+  }
+
+  public Map<String, Object> stats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("hits", hits.sum());
+    stats.put("misses", misses.sum());
+    stats.put("revalidations", revalidations.sum());
+    stats.put("heap", heap.stats());
+    stats.put("disk", disk.stats());
+    return stats;
+  }
+
+  // pinned carries the generation we validated, so the cached bytes match the version key
+  private CachedObject load(String key, BlobId pinned, Blob meta, String version, long now) throws IOException {
+    long size = meta.getSize() == null ? 0 : meta.getSize();
+
+    if (size <= heapMaxObjectSize) {
+      ByteBuffer content = ByteBuffer.wrap(storage.readAllBytes(pinned)).asReadOnlyBuffer();
+      Entry entry = new Entry(version, meta.getContentType(), content, null, now);
+      heap.put(key, entry);
+      return entry.toObject(false);
+    }
+
+    if (size <= diskMaxObjectSize) {
+      // Streamed straight to disk, never buffered whole in heap
+      Path file = Files.createTempFile(diskDir, "object", ".bin");
+      try (OutputStream out = Files.newOutputStream(file)) {
+        streamer.copy(pinned, 0, size, out);
+      }
+      MappedByteBuffer content;
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      Entry entry = new Entry(version, meta.getContentType(), content, file, now);
+      disk.put(key, entry);
+      return entry.toObject(false);
+    }
+
+    // Too big for either tier: pass through uncached
+    ByteBuffer content = ByteBuffer.wrap(storage.readAllBytes(pinned));
+    return new CachedObject(content, meta.getContentType(), false);
+  }
+
+  private void invalidate(String key) {
+    heap.remove(key);
+    disk.remove(key);
+  }
+
+  // Generation identifies the object version; fall back to updated+size if it isn't available
+  private static String versionOf(Blob meta) {
+    if (meta.getGeneration() != null) {
+      return meta.getGeneration().toString();
+    }
+    return meta.getUpdateTimeOffsetDateTime() + ":" + meta.getSize();
+  }
+
+  public record CachedObject(ByteBuffer content, String contentType, boolean hit) {
+
+    public long size() {
+      return content.remaining();
+    }
+
+    public String text() {
+      return StandardCharsets.UTF_8.decode(content.duplicate()).toString();
+    }
+  }
+
+  private static final class Entry {
+    private final String version;
+    private final String contentType;
+    private final ByteBuffer content;
+    private final Path file;
+    private volatile long validatedAt;
+
+    Entry(String version, String contentType, ByteBuffer content, Path file, long validatedAt) {
+      this.version = version;
+      this.contentType = contentType;
+      this.content = content;
+      this.file = file;
+      this.validatedAt = validatedAt;
+    }
+
+    long size() {
+      return content.capacity();
+    }
+
+    CachedObject toObject(boolean hit) {
+      return new CachedObject(content.duplicate(), contentType, hit);
+    }
+
+    void discard() {
+      // A mapping stays readable after its file is deleted, so in-flight readers are safe
+      if (file != null) {
+        try {
+          Files.deleteIfExists(file);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+  }
+
+  // LRU over entries with a byte budget
+  private static final class Tier {
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder evictions = new LongAdder();
+    private long bytes;
+
+    Tier(long maxBytes) {
+      this.maxBytes = maxBytes;
+    }
+
+    synchronized Entry get(String key) {
+      return entries.get(key);
+    }
+
+    synchronized void put(String key, Entry entry) {
+      remove(key);
+      if (entry.size() > maxBytes) {
+        entry.discard();
+        return;
+      }
+      entries.put(key, entry);
+      bytes += entry.size();
+      var eldest = entries.entrySet().iterator();
+      while (bytes > maxBytes && eldest.hasNext()) {
+        Entry evicted = eldest.next().getValue();
+        eldest.remove();
+        bytes -= evicted.size();
+        evicted.discard();
+        evictions.increment();
+      }
+    }
+
+    synchronized void remove(String key) {
+      Entry removed = entries.remove(key);
+      if (removed != null) {
+        bytes -= removed.size();
+        removed.discard();
+      }
+    }
+
+    synchronized void clear() {
+      for (String key : new ArrayList<>(entries.keySet())) {
+        remove(key);
+      }
+    }
+
+    synchronized Map<String, Object> stats() {
+      return Map.of(
+          "entries", entries.size(),
+          "bytes", bytes,
+          "maxBytes", maxBytes,
+          "evictions", evictions.sum()
+      );
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package com.example.lab06;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+// Pipes a GCS ReadChannel straight to an OutputStream without buffering the object
+@Component
+public class ObjectStreamer {
+
+  private final Storage storage;
+  private final BufferPool buffers;
+  private final int readChunkSize;
+
+  public ObjectStreamer(Storage storage, BufferPool buffers,
+                        @Value("${gcs.read.chunk-size}") int readChunkSize) {
+    this.storage = storage;
+    this.buffers = buffers;
+    this.readChunkSize = readChunkSize;
+  }
+
+  // Copies bytes [from, to) of the object; returns the number of bytes written
+  public long copy(BlobId blobId, long from, long to, OutputStream out) throws IOException {
+    ByteBuffer buffer = buffers.acquire();
+    try (ReadChannel reader = storage.reader(blobId)) {
+      reader.setChunkSize(readChunkSize);
+      reader.seek(from);
+      reader.limit(to);
+
+      long copied = 0;
+      while (reader.read(buffer) >= 0) {
+        buffer.flip();
+        out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        copied += buffer.remaining();
+        buffer.clear();
+      }
+      out.flush();
+      return copied;
+    } finally {
+      buffers.release(buffer);
+    }
+  }
+}
@@ -0,0 +1,276 @@
+package com.example.lab06;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Streams request bodies into GCS without holding the payload in heap.
+// Composite mode uploads consecutive parts in parallel and composes them at the end.
+@Component
+public class ObjectUploader {
+
+  // GCS compose accepts at most 32 source objects per call
+  private static final int MAX_COMPOSE_SOURCES = 32;
+
+  private final Storage storage;
+  private final BufferPool buffers;
+  private final int chunkSize;
+  private final long partSize;
+  private final int parallelism;
+  // Buffers a part may have queued ahead of its WriteChannel: one upload chunk
+  private final int laneBuffers;
+  private final ExecutorService partExecutor;
+
+  public ObjectUploader(Storage storage, BufferPool buffers,
+                        @Value("${gcs.upload.chunk-size}") int chunkSize,
+                        @Value("${gcs.upload.composite.part-size}") long partSize,
+                        @Value("${gcs.upload.composite.parallelism}") int parallelism,
+                        @Value("${gcs.upload.composite.threads}") int threads) {
+    this.storage = storage;
+    this.buffers = buffers;
+    this.chunkSize = chunkSize;
+    this.partSize = partSize;
+    this.parallelism = Math.max(1, parallelism);
+    this.laneBuffers = Math.max(1, (chunkSize + buffers.bufferSize() - 1) / buffers.bufferSize());
+    this.partExecutor = Executors.newFixedThreadPool(Math.max(1, threads));
+  }
+
+  @PreDestroy
+  void shutdown() {
+    partExecutor.shutdown();
+  }
+
+  public Result upload(BlobInfo target, InputStream body) throws IOException {
+    ByteBuffer buffer = buffers.acquire();
+    try (WriteChannel writer = storage.writer(target)) {
+      writer.setChunkSize(chunkSize);
+      long size = 0;
+      int read;
+      while ((read = body.read(buffer.array())) >= 0) {
+        buffer.limit(read);
+        while (buffer.hasRemaining()) {
+          writer.write(buffer);
+        }
+        buffer.clear();
+        size += read;
+      }
+      return new Result(size, 1);
+    } finally {
+      buffers.release(buffer);
+    }
+  }
+
+  public Result uploadComposite(BlobInfo target, InputStream body) throws IOException {
+    String uploadId = UUID.randomUUID().toString();
+    List<BlobId> parts = new ArrayList<>();
+    List<PartLane> lanes = new ArrayList<>();
+
+    // Bounds how many part uploads run at once. Each part queues up to one chunk ahead of
+    // its WriteChannel, so the bytes read ahead of GCS stay under parallelism chunks and a
+    // part that is still flushing doesn't hold back the next one.
+    Semaphore openParts = new Semaphore(parallelism);
+    // First failure from any lane; stops reading the body instead of uploading the rest
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    long size = 0;
+    try {
+      PartLane lane = null;
+      while (failure.get() == null) {
+        ByteBuffer buffer = buffers.acquire();
+        int read;
+        try {
+          read = fill(body, buffer);
+        } catch (IOException | RuntimeException e) {
+          buffers.release(buffer);
+          throw e;
+        }
+        if (read < 0) {
+          buffers.release(buffer);
+          break;
+        }
+        buffer.limit(read);
+
+        if (lane == null || lane.written >= partSize) {
+          if (lane != null) {
+            lane.close(openParts);
+          }
+          acquire(openParts);
+          BlobId partId = BlobId.of(target.getBucket(),
+              "_composite/" + uploadId + "/part-" + parts.size());
+          parts.add(partId);
+          lane = new PartLane(BlobInfo.newBuilder(partId).build(), failure);
+          lanes.add(lane);
+        }
+        lane.write(buffer);
+        size += read;
+      }
+      for (PartLane open : lanes) {
+        open.close(openParts);
+      }
+      join(lanes);
+
+      if (parts.isEmpty()) {
+        storage.create(target);
+      } else {
+        compose(target, parts);
+      }
+      return new Result(size, parts.size());
+
+    } catch (IOException | RuntimeException e) {
+      // Let in-flight parts settle before deleting them
+      for (PartLane open : lanes) {
+        open.close(openParts).handle((ignored, error) -> null).join();
+      }
+      throw e;
+    } finally {
+      for (BlobId part : parts) {
+        storage.delete(part);
+      }
+    }
+  }
+
+  // Composes up to 32 parts at a time, folding the running target into the next batch
+  private Blob compose(BlobInfo target, List<BlobId> parts) {
+    Blob composed = null;
+    int index = 0;
+    while (index < parts.size()) {
+      Storage.ComposeRequest.Builder request = Storage.ComposeRequest.newBuilder().setTarget(target);
+      int room = MAX_COMPOSE_SOURCES;
+      if (composed != null) {
+        request.addSource(target.getName());
+        room--;
+      }
+      for (int i = 0; i < room && index < parts.size(); i++, index++) {
+        request.addSource(parts.get(index).getName());
+      }
+      composed = storage.compose(request.build());
+    }
+    return composed;
+  }
+
+  // Reads until the buffer is full or the body ends, so a part's chunk of queued buffers
+  // holds a chunk of bytes even when the request body arrives in small reads; -1 at the end
+  private static int fill(InputStream body, ByteBuffer buffer) throws IOException {
+    int filled = 0;
+    while (filled < buffer.capacity()) {
+      int read = body.read(buffer.array(), filled, buffer.capacity() - filled);
+      if (read < 0) {
+        break;
+      }
+      filled += read;
+    }
+    return filled == 0 ? -1 : filled;
+  }
+
+  private static void acquire(Semaphore semaphore) throws IOException {
+    try {
+      semaphore.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for upload capacity", e);
+    }
+  }
+
+  private static void join(List<PartLane> lanes) throws IOException {
+    try {
+      CompletableFuture.allOf(lanes.stream().map(lane -> lane.closed).toArray(CompletableFuture[]::new)).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof UncheckedIOException io) {
+        throw io.getCause();
+      }
+      throw e;
+    }
+  }
+
+  // One part upload; writes are chained so they hit the WriteChannel in order
+  private class PartLane {
+
+    private final WriteChannel writer;
+    private final AtomicReference<Throwable> failure;
+    // Buffers queued for this part and not yet written
+    private final Semaphore queued = new Semaphore(laneBuffers);
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+    private CompletableFuture<Void> closed;
+    private long written;
+
+    PartLane(BlobInfo part, AtomicReference<Throwable> failure) {
+      this.writer = storage.writer(part);
+      this.writer.setChunkSize(chunkSize);
+      this.failure = failure;
+    }
+
+    // Blocks while this part already has a chunk queued
+    void write(ByteBuffer buffer) throws IOException {
+      try {
+        acquire(queued);
+      } catch (IOException e) {
+        buffers.release(buffer);
+        throw e;
+      }
+      written += buffer.remaining();
+      tail = tail.handleAsync((ignored, error) -> {
+        try {
+          // After a failure, later buffers are only returned to the pool
+          if (error != null) {
+            throw error instanceof CompletionException ce ? ce : new CompletionException(error);
+          }
+          while (buffer.hasRemaining()) {
+            writer.write(buffer);
+          }
+          return null;
+        } catch (IOException e) {
+          failure.compareAndSet(null, e);
+          throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+          failure.compareAndSet(null, e);
+          throw e;
+        } finally {
+          buffers.release(buffer);
+          queued.release();
+        }
+      }, partExecutor);
+    }
+
+    CompletableFuture<Void> close(Semaphore openParts) {
+      if (closed == null) {
+        closed = tail.whenCompleteAsync((ignored, error) -> {
+          try {
+            writer.close();
+          } catch (IOException e) {
+            if (error == null) {
+              failure.compareAndSet(null, e);
+              throw new UncheckedIOException(e);
+            }
+          } finally {
+            openParts.release();
+          }
+        }, partExecutor);
+      }
+      return closed;
+    }
+  }
+
+  public record Result(long size, int parts) {
+  }
+}
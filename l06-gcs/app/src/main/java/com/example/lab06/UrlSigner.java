@@ -0,0 +1,123 @@
+package com.example.lab06;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.HttpMethod;
+import com.google.cloud.storage.Storage;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Issues V4 signed URLs so clients talk to GCS directly.
+// URLs are cached per object/method until shortly before they expire,
+// so repeated requests don't pay for signing (an IAM signBlob call on Cloud Run).
+// Only names under the configured prefix are signed.
+@Component
+public class UrlSigner {
+
+  private final Storage storage;
+  private final Duration ttl;
+  private final Duration refreshBefore;
+  private final int maxEntries;
+  private final String prefix;
+
+  private final Map<Key, SignedUrl> cache;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder signed = new LongAdder();
+
+  public UrlSigner(Storage storage,
+                   @Value("${gcs.signed-url.ttl}") Duration ttl,
+                   @Value("${gcs.signed-url.refresh-before}") Duration refreshBefore,
+                   @Value("${gcs.signed-url.cache-size}") int maxEntries,
+                   @Value("${gcs.signed-url.prefix}") String prefix) {
+    this.storage = storage;
+    this.ttl = ttl;
+    this.refreshBefore = refreshBefore;
+    this.maxEntries = maxEntries;
+    this.prefix = prefix;
+    this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, SignedUrl> eldest) {
+        return size() > UrlSigner.this.maxEntries;
+      }
+    };
+  }
+
+  public boolean allows(String name) {
+    return !prefix.isEmpty() && name.startsWith(prefix);
+  }
+
+  public SignedUrl sign(BlobInfo blob, HttpMethod method) {
+    if (!allows(blob.getName())) {
+      throw new IllegalArgumentException("Object is outside the signed URL prefix: " + blob.getName());
+    }
+    Key key = new Key(blob.getBucket(), blob.getName(), method, blob.getContentType());
+    Instant now = Instant.now();
+
+    synchronized (cache) {
+      SignedUrl cached = cache.get(key);
+      if (cached != null && cached.expiresAt().minus(refreshBefore).isAfter(now)) {
+        hits.increment();
+        return cached;
+      }
+    }
+
+    List<Storage.SignUrlOption> options = new ArrayList<>();
+    options.add(Storage.SignUrlOption.withV4Signature());
+    options.add(Storage.SignUrlOption.httpMethod(method));
+    if (blob.getContentType() != null) {
+      // Client must send the same Content-Type, or GCS rejects the signature
+      options.add(Storage.SignUrlOption.withContentType());
+    }
+    URL url = storage.signUrl(blob, ttl.toMillis(), TimeUnit.MILLISECONDS,
+        options.toArray(Storage.SignUrlOption[]::new));
+    signed.increment();
+
+    SignedUrl result = new SignedUrl(toUri(url), now.plus(ttl), refreshBefore);
+    synchronized (cache) {
+      cache.put(key, result);
+    }
+    return result;
+  }
+
+  public Map<String, Object> stats() {
+    synchronized (cache) {
+      return Map.of(
+          "entries", cache.size(),
+          "hits", hits.sum(),
+          "signed", signed.sum()
+      );
+    }
+  }
+
+  private static URI toUri(URL url) {
+    try {
+      return url.toURI();
+    } catch (URISyntaxException e) {
+      throw new IllegalStateException("Signed URL is not a valid URI: " + url, e);
+    }
+  }
+
+  private record Key(String bucket, String name, HttpMethod method, String contentType) {
+  }
+
+  public record SignedUrl(URI uri, Instant expiresAt, Duration refreshBefore) {
+
+    // How long a client may reuse this URL before we would hand out a new one
+    public Duration freshFor() {
+      Duration remaining = Duration.between(Instant.now(), expiresAt.minus(refreshBefore));
+      return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+  }
+}
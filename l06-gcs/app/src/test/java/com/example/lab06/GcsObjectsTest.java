@@ -0,0 +1,296 @@
+package com.example.lab06;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.contrib.nio.testing.LocalStorageHelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+// Runs the object endpoints against the in-memory LocalStorageHelper instead of real GCS
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "gcs.bucket=test-bucket",
+        "gcs.stream.buffer-size=1024",
+        "gcs.upload.composite.part-size=4096",
+        "gcs.cache.heap.max-object-size=16",
+        "gcs.signed-url.prefix=docs/"
+    })
+class GcsObjectsTest {
+
+  @TestConfiguration
+  static class LocalStorageConfig {
+    @Bean
+    @Primary
+    Storage localStorage() {
+      // LocalStorageHelper has no compose, so concatenate the sources by hand
+      Storage storage = spy(LocalStorageHelper.getOptions().getService());
+      doAnswer(invocation -> {
+        Storage.ComposeRequest request = invocation.getArgument(0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Storage.ComposeRequest.SourceBlob source : request.getSourceBlobs()) {
+          out.write(storage.readAllBytes(BlobId.of(request.getTarget().getBucket(), source.getName())));
+        }
+        return storage.create(request.getTarget(), out.toByteArray());
+      }).when(storage).compose(any());
+      // No signing key without real credentials: number each signature instead
+      AtomicInteger signatures = new AtomicInteger();
+      doAnswer(invocation -> {
+        BlobInfo blob = invocation.getArgument(0);
+        return new URL("https://storage.example/" + blob.getBucket() + "/" + blob.getName()
+            + "?signature=" + signatures.incrementAndGet());
+      }).when(storage).signUrl(any(), anyLong(), any(), any(Storage.SignUrlOption[].class));
+      return storage;
+    }
+  }
+
+  @Autowired
+  private TestRestTemplate restTemplate;
+
+  @LocalServerPort
+  private int port;
+
+  @Autowired
+  private Storage storage;
+
+  @BeforeEach
+  void seed() {
+    storage.create(
+        BlobInfo.newBuilder("test-bucket", "docs/hello.txt").setContentType("text/plain").build(),
+        "hello world".getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void downloadStreamsWholeObject() {
+    ResponseEntity<String> response = restTemplate.getForEntity("/gcs/objects/docs/hello.txt", String.class);
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals("hello world", response.getBody());
+    assertEquals("text/plain", response.getHeaders().getContentType().toString());
+    assertEquals("bytes", response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES));
+  }
+
+  @Test
+  void downloadHonoursRange() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.RANGE, "bytes=6-8");
+    ResponseEntity<String> response = restTemplate.exchange(
+        "/gcs/objects/docs/hello.txt", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+    assertEquals("wor", response.getBody());
+    assertEquals("bytes 6-8/11", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+  }
+
+  @Test
+  void downloadRejectsUnsatisfiableRange() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.RANGE, "bytes=100-");
+    ResponseEntity<String> response = restTemplate.exchange(
+        "/gcs/objects/docs/hello.txt", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+  }
+
+  @Test
+  void downloadMissingObjectReturns404() {
+    ResponseEntity<String> response = restTemplate.getForEntity("/gcs/objects/missing.txt", String.class);
+    assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+  }
+
+  @Test
+  void uploadStreamsBodyIntoObject() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.TEXT_PLAIN);
+    ResponseEntity<Map> response = restTemplate.exchange(
+        "/gcs/objects/uploads/small.txt", HttpMethod.PUT,
+        new HttpEntity<>("streamed body", headers), Map.class);
+
+    assertEquals(HttpStatus.CREATED, response.getStatusCode());
+    assertEquals(13, response.getBody().get("size"));
+    assertEquals("streamed body", new String(
+        storage.readAllBytes(BlobId.of("test-bucket", "uploads/small.txt")), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void compositeUploadComposesParts() {
+    byte[] payload = new byte[10_000];
+    for (int i = 0; i < payload.length; i++) {
+      payload[i] = (byte) ('a' + i % 26);
+    }
+    ResponseEntity<Map> response = restTemplate.exchange(
+        "/gcs/objects/uploads/big.bin?composite=true", HttpMethod.PUT,
+        new HttpEntity<>(payload), Map.class);
+
+    assertEquals(HttpStatus.CREATED, response.getStatusCode());
+    assertEquals(3, response.getBody().get("parts"));
+    assertArrayEquals(payload, storage.readAllBytes(BlobId.of("test-bucket", "uploads/big.bin")));
+    // Temporary parts are cleaned up after compose
+    assertFalse(storage.list("test-bucket", Storage.BlobListOption.prefix("_composite/"))
+        .iterateAll().iterator().hasNext());
+  }
+
+  @Test
+  void listFiltersByPrefixAndGroupsByDelimiter() {
+    storage.create(BlobInfo.newBuilder("test-bucket", "docs/nested/deep.txt").build(), new byte[1]);
+
+    ResponseEntity<Map> response = restTemplate.getForEntity(
+        "/gcs/list?prefix=docs/&delimiter=/", Map.class);
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    List<Map<String, Object>> objects = (List<Map<String, Object>>) response.getBody().get("objects");
+    assertEquals(List.of("docs/hello.txt"), objects.stream().map(o -> o.get("name")).toList());
+    assertEquals(List.of("docs/nested/"), response.getBody().get("prefixes"));
+  }
+
+  @Test
+  void listStreamsNdjson() {
+    ResponseEntity<String> response = restTemplate.getForEntity(
+        "/gcs/list?format=ndjson&prefix=docs/", String.class);
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals("application/x-ndjson", response.getHeaders().getContentType().toString());
+    String[] lines = response.getBody().split("\n");
+    assertTrue(lines.length >= 1);
+    assertTrue(lines[0].contains("\"name\":\"docs/"));
+  }
+
+  @Test
+  void readIsServedFromCacheUntilObjectChanges() {
+    storage.create(BlobInfo.newBuilder("test-bucket", "config/app.txt").build(),
+        "v1".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals("miss", restTemplate.getForObject("/gcs/read?name=config/app.txt", Map.class).get("cache"));
+    Map second = restTemplate.getForObject("/gcs/read?name=config/app.txt", Map.class);
+    assertEquals("hit", second.get("cache"));
+    assertEquals("v1", second.get("content"));
+
+    // A new version changes the generation, so the entry is reloaded
+    storage.create(BlobInfo.newBuilder("test-bucket", "config/app.txt").build(),
+        "version-2".getBytes(StandardCharsets.UTF_8));
+    Map third = restTemplate.getForObject("/gcs/read?name=config/app.txt", Map.class);
+    assertEquals("miss", third.get("cache"));
+    assertEquals("version-2", third.get("content"));
+  }
+
+  @Test
+  void largerObjectsGoToDiskTier() {
+    String content = "x".repeat(100);
+    storage.create(BlobInfo.newBuilder("test-bucket", "assets/large.txt").build(),
+        content.getBytes(StandardCharsets.UTF_8));
+
+    restTemplate.getForObject("/gcs/read?name=assets/large.txt", Map.class);
+    Map cached = restTemplate.getForObject("/gcs/read?name=assets/large.txt", Map.class);
+    assertEquals("hit", cached.get("cache"));
+    assertEquals(content, cached.get("content"));
+
+    Map stats = restTemplate.getForObject("/gcs/cache/stats", Map.class);
+    assertTrue(((Number) ((Map) stats.get("disk")).get("entries")).intValue() >= 1);
+  }
+
+  @Test
+  void redirectModeReturnsCachedSignedUrl() throws Exception {
+    HttpClient client = HttpClient.newHttpClient();
+    HttpRequest request = HttpRequest.newBuilder(
+        URI.create("http://localhost:" + port + "/gcs/objects/docs/hello.txt?redirect=true")).build();
+
+    HttpResponse<Void> first = client.send(request, HttpResponse.BodyHandlers.discarding());
+    HttpResponse<Void> second = client.send(request, HttpResponse.BodyHandlers.discarding());
+
+    assertEquals(302, first.statusCode());
+    String location = first.headers().firstValue("Location").orElseThrow();
+    assertTrue(location.startsWith("https://storage.example/test-bucket/docs/hello.txt"));
+    // Second request reuses the cached signature
+    assertEquals(location, second.headers().firstValue("Location").orElseThrow());
+  }
+
+  @Test
+  void uploadUrlIsSignedForPut() {
+    Map body = restTemplate.getForObject("/gcs/upload-url?name=docs/direct.bin&contentType=image/png", Map.class);
+    assertEquals("PUT", body.get("method"));
+    assertTrue(((String) body.get("url")).contains("docs/direct.bin"));
+    assertEquals(Map.of("Content-Type", "image/png"), body.get("headers"));
+  }
+
+  @Test
+  void signedUrlsOnlyCoverPrefixAndExistingObjects() throws Exception {
+    ResponseEntity<Map> outside = restTemplate.getForEntity("/gcs/upload-url?name=private/keys.txt", Map.class);
+    assertEquals(HttpStatus.FORBIDDEN, outside.getStatusCode());
+
+    HttpClient client = HttpClient.newHttpClient();
+    HttpResponse<Void> forbidden = client.send(HttpRequest.newBuilder(
+        URI.create("http://localhost:" + port + "/gcs/objects/private/keys.txt?redirect=true")).build(),
+        HttpResponse.BodyHandlers.discarding());
+    assertEquals(403, forbidden.statusCode());
+
+    HttpResponse<Void> missing = client.send(HttpRequest.newBuilder(
+        URI.create("http://localhost:" + port + "/gcs/objects/docs/missing.txt?redirect=true")).build(),
+        HttpResponse.BodyHandlers.discarding());
+    assertEquals(404, missing.statusCode());
+  }
+
+  @Test
+  void archiveStreamsZipOfPrefix() throws Exception {
+    storage.create(BlobInfo.newBuilder("test-bucket", "batch/a.txt").build(), "alpha".getBytes(StandardCharsets.UTF_8));
+    storage.create(BlobInfo.newBuilder("test-bucket", "batch/b.txt").build(), "bravo".getBytes(StandardCharsets.UTF_8));
+
+    ResponseEntity<byte[]> response = restTemplate.getForEntity("/gcs/archive?prefix=batch/", byte[].class);
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+
+    Map<String, String> entries = new TreeMap<>();
+    try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(response.getBody()))) {
+      ZipEntry entry;
+      while ((entry = zip.getNextEntry()) != null) {
+        entries.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+      }
+    }
+    assertEquals(Map.of("batch/a.txt", "alpha", "batch/b.txt", "bravo"), entries);
+  }
+
+  @Test
+  void archiveStreamsTar() throws Exception {
+    storage.create(BlobInfo.newBuilder("test-bucket", "tarball/one.txt").build(), "one".getBytes(StandardCharsets.UTF_8));
+
+    ResponseEntity<byte[]> response = restTemplate.getForEntity("/gcs/archive?prefix=tarball/&format=tar", byte[].class);
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+
+    try (TarArchiveInputStream tar = new TarArchiveInputStream(new ByteArrayInputStream(response.getBody()))) {
+      assertEquals("tarball/one.txt", tar.getNextEntry().getName());
+      assertEquals("one", new String(tar.readAllBytes(), StandardCharsets.UTF_8));
+    }
+  }
+}
@@ -0,0 +1,250 @@
+package com.example.lab06;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import com.google.cloud.RestorableState;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Memory and concurrency checks for the streaming upload paths, with a rough throughput/RSS
+// report. Storage is mocked: its writers count and drop the bytes at the production chunk
+// size, so the numbers leave out GCS itself and only show what the service holds and how
+// parts overlap.
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "gcs.bucket=test-bucket",
+        "gcs.upload.chunk-size=8388608",
+        "gcs.upload.composite.part-size=16777216",
+        "gcs.upload.composite.parallelism=4"
+    })
+class UploadThroughputTest {
+
+  private static final long PAYLOAD_SIZE = 32L * 1024 * 1024;
+
+  @LocalServerPort
+  private int port;
+
+  @MockBean
+  private Storage storage;
+
+  @SpyBean
+  private BufferPool buffers;
+
+  @Value("${gcs.upload.chunk-size}")
+  private int chunkSize;
+
+  @Value("${gcs.upload.composite.part-size}")
+  private long partSize;
+
+  @Value("${gcs.upload.composite.parallelism}")
+  private int parallelism;
+
+  @Test
+  void uploadHoldsOneBufferRegardlessOfPayloadSize() throws Exception {
+    AtomicInteger peakBorrowed = trackBorrowedBuffers();
+    DiscardingWriter writer = new DiscardingWriter();
+    when(storage.writer(any(BlobInfo.class))).thenReturn(writer);
+
+    upload("");
+
+    assertEquals(PAYLOAD_SIZE, writer.written.get());
+    // Heap held by the upload: one pooled buffer here plus the client's chunk buffer
+    assertEquals(1, peakBorrowed.get());
+    assertTrue(writer.largestWrite.get() <= buffers.bufferSize());
+    assertEquals(chunkSize, writer.chunkSize);
+    assertTrue(buffers.bufferSize() + (long) chunkSize < PAYLOAD_SIZE);
+  }
+
+  @Test
+  void compositeUploadWritesPartsConcurrently() throws Exception {
+    AtomicInteger peakBorrowed = trackBorrowedBuffers();
+    AtomicInteger writing = new AtomicInteger();
+    AtomicInteger peakWriting = new AtomicInteger();
+    List<DiscardingWriter> writers = new CopyOnWriteArrayList<>();
+    // Bytes the first part had written when the second wrote its first buffer
+    AtomicLong firstPartAtSecondStart = new AtomicLong(-1);
+    when(storage.writer(any(BlobInfo.class))).thenAnswer(invocation -> {
+      // Each write takes a little while, as a chunk flush to GCS would
+      DiscardingWriter writer = new DiscardingWriter() {
+        @Override
+        public int write(ByteBuffer source) {
+          peakWriting.accumulateAndGet(writing.incrementAndGet(), Math::max);
+          if (writers.indexOf(this) == 1) {
+            firstPartAtSecondStart.compareAndSet(-1, writers.get(0).written.get());
+          }
+          try {
+            Thread.sleep(1);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            writing.decrementAndGet();
+          }
+          return super.write(source);
+        }
+      };
+      writers.add(writer);
+      return writer;
+    });
+
+    String response = upload("?composite=true");
+
+    assertTrue(response.contains("\"parts\":2"), response);
+    assertEquals(2, writers.size());
+    assertEquals(PAYLOAD_SIZE, writers.stream().mapToLong(writer -> writer.written.get()).sum());
+    writers.forEach(writer -> assertEquals(chunkSize, writer.chunkSize));
+    // The second part starts while the first still has a chunk queued
+    assertTrue(peakWriting.get() >= 2, "peak concurrent part writes: " + peakWriting.get());
+    assertTrue(firstPartAtSecondStart.get() <= partSize - chunkSize + 4L * buffers.bufferSize(),
+        "first part had written " + firstPartAtSecondStart.get() + " bytes when the second started");
+    // Read-ahead is bounded by one chunk per open part, plus the buffer being read into
+    int chunkBuffers = chunkSize / buffers.bufferSize();
+    assertTrue(peakBorrowed.get() <= parallelism * chunkBuffers + 1, "peak buffers: " + peakBorrowed.get());
+    verify(storage).compose(any());
+  }
+
+  // Counts buffers taken from the pool and not yet returned; returns the peak
+  private AtomicInteger trackBorrowedBuffers() {
+    AtomicInteger borrowed = new AtomicInteger();
+    AtomicInteger peakBorrowed = new AtomicInteger();
+    doAnswer(invocation -> {
+      peakBorrowed.accumulateAndGet(borrowed.incrementAndGet(), Math::max);
+      return invocation.callRealMethod();
+    }).when(buffers).acquire();
+    doAnswer(invocation -> {
+      borrowed.decrementAndGet();
+      return invocation.callRealMethod();
+    }).when(buffers).release(any());
+    return peakBorrowed;
+  }
+
+  private String upload(String query) throws Exception {
+    HttpClient client = HttpClient.newHttpClient();
+    HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/gcs/objects/bench.bin" + query))
+        .header("Content-Type", "application/octet-stream")
+        .PUT(HttpRequest.BodyPublishers.fromPublisher(
+            HttpRequest.BodyPublishers.ofInputStream(() -> new PatternStream(PAYLOAD_SIZE)), PAYLOAD_SIZE))
+        .build();
+
+    long cpuStart = processCpuNanos();
+    long start = System.nanoTime();
+    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    double seconds = (System.nanoTime() - start) / 1e9;
+    double cpuSeconds = (processCpuNanos() - cpuStart) / 1e9;
+
+    assertEquals(201, response.statusCode());
+    double megabytes = PAYLOAD_SIZE / (1024.0 * 1024.0);
+    System.out.printf("upload%s: %.1f MB/s wall, %.1f MB per cpu-second, peak RSS %s%n",
+        query, megabytes / seconds, megabytes / cpuSeconds, peakRss());
+    return response.body();
+  }
+
+  // Stands in for the resumable upload channel: counts bytes and drops them
+  private static class DiscardingWriter implements WriteChannel {
+    final AtomicLong written = new AtomicLong();
+    final AtomicInteger largestWrite = new AtomicInteger();
+    volatile int chunkSize;
+    private volatile boolean open = true;
+
+    @Override
+    public int write(ByteBuffer source) {
+      int count = source.remaining();
+      largestWrite.accumulateAndGet(count, Math::max);
+      source.position(source.limit());
+      written.addAndGet(count);
+      return count;
+    }
+
+    @Override
+    public void setChunkSize(int chunkSize) {
+      this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public RestorableState<WriteChannel> capture() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isOpen() {
+      return open;
+    }
+
+    @Override
+    public void close() {
+      open = false;
+    }
+  }
+
+  private static long processCpuNanos() {
+    return ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os
+        ? os.getProcessCpuTime()
+        : 0;
+  }
+
+  // VmHWM is the resident-set high-water mark; only available on Linux
+  private static String peakRss() throws Exception {
+    Path status = Path.of("/proc/self/status");
+    if (!Files.exists(status)) {
+      return "n/a";
+    }
+    return Files.readAllLines(status).stream()
+        .filter(line -> line.startsWith("VmHWM:"))
+        .map(line -> line.substring("VmHWM:".length()).trim())
+        .findFirst()
+        .orElse("n/a");
+  }
+
+  // Generates the payload on the fly so the client side doesn't hold it in memory either
+  private static class PatternStream extends InputStream {
+    private long remaining;
+
+    PatternStream(long size) {
+      this.remaining = size;
+    }
+
+    @Override
+    public int read() {
+      return remaining-- > 0 ? (int) (remaining & 0x7f) : -1;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int count = (int) Math.min(length, remaining);
+      for (int i = 0; i < count; i++) {
+        buffer[offset + i] = (byte) ((remaining - i - 1) & 0x7f);
+      }
+      remaining -= count;
+      return count;
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package com.example.lab07;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+// Publishes a JSON array or NDJSON stream of messages as it is parsed.
+// Each element is either a string or {"message": "...", "attributes": {...}, "orderingKey": "..."}.
+// At most max-in-flight messages per request wait for an ack, so a slow topic
+// stops us reading the body (TCP backpressure) instead of buffering it.
+@Component
+public class BulkPublisher {
+
+  private final PublisherRegistry publishers;
+  private final ObjectReader reader;
+  private final int maxInFlight;
+
+  public BulkPublisher(PublisherRegistry publishers, ObjectMapper objectMapper,
+                       @Value("${pubsub.bulk.max-in-flight}") int maxInFlight) {
+    this.publishers = publishers;
+    // readValues() unwraps a top-level array and also reads a sequence of root values (NDJSON)
+    this.reader = objectMapper.readerFor(JsonNode.class);
+    this.maxInFlight = maxInFlight;
+  }
+
+  public Result publish(String topicId, InputStream body) throws IOException, InterruptedException {
+    Semaphore inFlight = new Semaphore(maxInFlight);
+    List<CompletableFuture<String>> pending = new ArrayList<>();
+    String parseError = null;
+
+    try (MappingIterator<JsonNode> elements = reader.readValues(body)) {
+      while (elements.hasNextValue()) {
+        PubsubMessage message = toMessage(elements.nextValue());
+        inFlight.acquire();
+        CompletableFuture<String> published = publishers.publish(topicId, message);
+        published.whenComplete((id, error) -> inFlight.release());
+        pending.add(published);
+      }
+    } catch (JsonProcessingException e) {
+      // Messages before the bad element are already on their way; report them and stop
+      parseError = "Invalid JSON at element " + pending.size() + ": " + e.getOriginalMessage();
+    } catch (IllegalArgumentException e) {
+      parseError = "Invalid element at index " + pending.size() + ": " + e.getMessage();
+    }
+
+    List<Map<String, Object>> results = new ArrayList<>(pending.size());
+    int failed = 0;
+    for (int i = 0; i < pending.size(); i++) {
+      Map<String, Object> result = new LinkedHashMap<>();
+      result.put("index", i);
+      try {
+        result.put("messageId", pending.get(i).join());
+      } catch (RuntimeException e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        result.put("error", cause.getMessage());
+        failed++;
+      }
+      results.add(result);
+    }
+    return new Result(pending.size() - failed, failed, results, parseError);
+  }
+
+  private static PubsubMessage toMessage(JsonNode element) {
+    if (element.isTextual()) {
+      return PubsubMessage.newBuilder()
+          .setData(ByteString.copyFrom(element.asText(), StandardCharsets.UTF_8))
+          .build();
+    }
+    if (!element.isObject() || !element.path("message").isTextual()) {
+      throw new IllegalArgumentException("expected a string or an object with a \"message\" string");
+    }
+    PubsubMessage.Builder message = PubsubMessage.newBuilder()
+        .setData(ByteString.copyFrom(element.get("message").asText(), StandardCharsets.UTF_8))
+        .setOrderingKey(element.path("orderingKey").asText(""));
+    element.path("attributes").fields()
+        .forEachRemaining(attribute -> message.putAttributes(attribute.getKey(), attribute.getValue().asText()));
+    return message.build();
+  }
+
+  public record Result(int published, int failed, List<Map<String, Object>> results, String error) {
+  }
+}
@@ -1,11 +1,36 @@
 package com.example.lab07;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+
+import com.google.api.gax.core.CredentialsProvider;
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.api.gax.rpc.TransportChannelProvider;
+import io.grpc.ManagedChannelBuilder;
 
 @SpringBootApplication
 public class Lab07Application {
   public static void main(String[] args) {
     SpringApplication.run(Lab07Application.class, args);
   }
+
+  // Only defined when PUBSUB_EMULATOR_HOST is set: plaintext channel, no credentials.
+  // Otherwise Publisher and Subscriber keep their own tuned channel defaults.
+  @Bean
+  @ConditionalOnExpression("!'${pubsub.emulator-host}'.isEmpty()")
+  public TransportChannelProvider pubsubChannelProvider(@Value("${pubsub.emulator-host}") String emulatorHost) {
+    return FixedTransportChannelProvider.create(GrpcTransportChannel.create(
+        ManagedChannelBuilder.forTarget(emulatorHost).usePlaintext().build()));
+  }
+
+  @Bean
+  @ConditionalOnExpression("!'${pubsub.emulator-host}'.isEmpty()")
+  public CredentialsProvider pubsubCredentialsProvider() {
+    return NoCredentialsProvider.create();
+  }
 }
@@ -0,0 +1,122 @@
+package com.example.lab07;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Remembers recently processed messageIds so push redeliveries can be ACKed without reprocessing.
+// Two fixed-size open-addressing tables of 64-bit id hashes: "current" takes new ids, "previous"
+// is still consulted. They rotate when current is full or older than the window, so an id is
+// remembered for at least one window unless the byte budget runs out first. Memory never grows.
+@Component
+public class MessageDeduplicator {
+
+  private static final double MAX_LOAD = 0.75;
+
+  private final long windowNanos;
+  private final int slots;
+  private final int maxEntries;
+
+  private long[] current;
+  private long[] previous;
+  private int currentEntries;
+  private int previousEntries;
+  private long currentStartedAt;
+
+  private long checked;
+  private long duplicates;
+  private long rotations;
+
+  public MessageDeduplicator(@Value("${pubsub.dedup.max-bytes}") long maxBytes,
+                             @Value("${pubsub.dedup.window}") Duration window) {
+    // Two tables of 8-byte slots, rounded down to a power of two for masking
+    this.slots = Integer.highestOneBit((int) Math.max(16, Math.min(maxBytes / 16, 1 << 28)));
+    this.maxEntries = (int) (slots * MAX_LOAD);
+    this.windowNanos = window.toNanos();
+    this.current = new long[slots];
+    this.previous = new long[slots];
+    this.currentStartedAt = System.nanoTime();
+  }
+
+  public synchronized boolean isDuplicate(String messageId) {
+    checked++;
+    long hash = hash(messageId);
+    if (contains(current, hash) || contains(previous, hash)) {
+      duplicates++;
+      return true;
+    }
+    return false;
+  }
+
+  // Called only after successful processing, so NACKed messages are still redelivered
+  public synchronized void record(String messageId) {
+    long hash = hash(messageId);
+    if (contains(current, hash)) {
+      return;
+    }
+    if (currentEntries >= maxEntries || System.nanoTime() - currentStartedAt > windowNanos) {
+      rotate();
+    }
+    insert(current, hash);
+    currentEntries++;
+  }
+
+  public synchronized Map<String, Object> stats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("checked", checked);
+    stats.put("duplicates", duplicates);
+    stats.put("duplicateRate", checked == 0 ? 0.0 : (double) duplicates / checked);
+    stats.put("entries", currentEntries + previousEntries);
+    stats.put("capacity", maxEntries * 2);
+    stats.put("bytes", (long) slots * Long.BYTES * 2);
+    stats.put("rotations", rotations);
+    return stats;
+  }
+
+  private void rotate() {
+    long[] recycled = previous;
+    Arrays.fill(recycled, 0L);
+    previous = current;
+    previousEntries = currentEntries;
+    current = recycled;
+    currentEntries = 0;
+    currentStartedAt = System.nanoTime();
+    rotations++;
+  }
+
+  private boolean contains(long[] table, long hash) {
+    int mask = slots - 1;
+    for (int i = (int) hash & mask; table[i] != 0; i = (i + 1) & mask) {
+      if (table[i] == hash) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void insert(long[] table, long hash) {
+    int mask = slots - 1;
+    int i = (int) hash & mask;
+    while (table[i] != 0) {
+      i = (i + 1) & mask;
+    }
+    table[i] = hash;
+  }
+
+  // FNV-1a over the chars plus a final mix; 0 marks an empty slot so it is never returned
+  private static long hash(String messageId) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < messageId.length(); i++) {
+      h ^= messageId.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return h == 0 ? 1 : h;
+  }
+}
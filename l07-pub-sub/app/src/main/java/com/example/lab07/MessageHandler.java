@@ -0,0 +1,23 @@
+package com.example.lab07;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Message processing shared by the push endpoint and the streaming-pull subscriber.
+// Returning normally = ACK; throwing = NACK (Pub/Sub redelivers).
+@Component
+public class MessageHandler {
+
+  private final LongAdder processed = new LongAdder();
+
+  public void handle(String messageId, String data, Map<String, String> attributes) {
+    System.out.println("Received Pub/Sub message: " + data);
+    processed.increment();
+  }
+
+  public long processed() {
+    return processed.sum();
+  }
+}
@@ -1,25 +1,47 @@
 package com.example.lab07;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.google.cloud.pubsub.v1.Publisher;
 import com.google.protobuf.ByteString;
 import com.google.pubsub.v1.PubsubMessage;
 import com.google.pubsub.v1.TopicName;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 public class PubSubController {
 
-  private final String projectId = System.getenv().getOrDefault("PROJECT_ID", "");
-  private final String topicId = System.getenv().getOrDefault("PUBSUB_TOPIC", "lab07-topic");
+  private final PublisherRegistry publishers;
+  private final BulkPublisher bulkPublisher;
+  private final MessageHandler messageHandler;
+  private final MessageDeduplicator deduplicator;
+  private final String projectId;
+  private final String topicId;
+
+  public PubSubController(PublisherRegistry publishers, BulkPublisher bulkPublisher,
+                          MessageHandler messageHandler, MessageDeduplicator deduplicator,
+                          @Value("${pubsub.project-id}") String projectId,
+                          @Value("${pubsub.topic}") String topicId) {
+    this.publishers = publishers;
+    this.bulkPublisher = bulkPublisher;
+    this.messageHandler = messageHandler;
+    this.deduplicator = deduplicator;
+    this.projectId = projectId;
+    this.topicId = topicId;
+  }
 
   @GetMapping("/")
   public Map<String, Object> root() {
@@ -28,8 +50,10 @@ public class PubSubController {
         "project", projectId,
         "topic", topicId,
         "endpoints", Map.of(
-            "publish", "POST /pubsub/publish with {\"message\":\"text\"}",
-            "consume", "POST /pubsub/consume (push subscription endpoint)"
+            "publish", "POST /pubsub/publish with {\"message\":\"text\", \"orderingKey\":\"optional\"} (?async=true for 202 + correlation id)",
+            "bulk", "POST /pubsub/publish/bulk with a JSON array or NDJSON body",
+            "consume", "POST /pubsub/consume (push subscription endpoint)",
+            "stats", "GET /pubsub/stats (processed messages and dedup metrics)"
         )
     );
   }
@@ -39,44 +63,93 @@ public class PubSubController {
     return Map.of("healthy", true);
   }
 
+  // Publishes through the shared batching Publisher.
+  // Default waits for the message id without holding a servlet thread;
+  // async=true returns 202 right away with a correlation id (also set as a message attribute).
   @PostMapping("/pubsub/publish")
-  public Map<String, Object> publish(@RequestBody Map<String, String> body) {
+  public CompletableFuture<ResponseEntity<Map<String, Object>>> publish(
+      @RequestBody Map<String, String> body,
+      @RequestParam(defaultValue = "false") boolean async) {
 
     if (projectId.isEmpty()) {
-      return Map.of("error", "PROJECT_ID env var not set");
+      return CompletableFuture.completedFuture(
+          ResponseEntity.ok(Map.of("error", "PROJECT_ID env var not set")));
     }
 
     String payload = body.getOrDefault("message", "hello pubsub");
-    TopicName topicName = TopicName.of(projectId, topicId);
+    String topicName = TopicName.of(projectId, topicId).toString();
+    String correlationId = UUID.randomUUID().toString();
+
+    String orderingKey = body.getOrDefault("orderingKey", "");
+
+    PubsubMessage pubsubMessage = PubsubMessage.newBuilder()
+        .setData(ByteString.copyFrom(payload, StandardCharsets.UTF_8))
+        .setOrderingKey(orderingKey)
+        .putAttributes("correlationId", correlationId)
+        .build();
+
+    CompletableFuture<String> published = publishers.publish(topicId, pubsubMessage);
+
+    if (async) {
+      published.whenComplete((messageId, error) -> {
+        if (error != null) {
+          System.err.println("Failed to publish " + correlationId + ": " + error.getMessage());
+        }
+      });
+      return CompletableFuture.completedFuture(ResponseEntity.accepted().body(Map.of(
+          "accepted", true,
+          "correlationId", correlationId,
+          "topic", topicName
+      )));
+    }
 
-    Publisher publisher = null;
-    try {
-      publisher = Publisher.newBuilder(topicName).build();
+    return published.handle((messageId, error) -> {
+      if (error != null) {
+        return ResponseEntity.ok(Map.<String, Object>of(
+            "error", "Failed to publish: " + error.getMessage()
+        ));
+      }
+      Map<String, Object> response = new LinkedHashMap<>();
+      response.put("published", true);
+      response.put("messageId", messageId);
+      response.put("correlationId", correlationId);
+      response.put("topic", topicName);
+      response.put("payload", payload);
+      if (!orderingKey.isEmpty()) {
+        response.put("orderingKey", orderingKey);
+      }
+      return ResponseEntity.ok(response);
+    });
+  }
 
-      PubsubMessage pubsubMessage = PubsubMessage.newBuilder()
-          .setData(ByteString.copyFrom(payload, StandardCharsets.UTF_8))
-          .build();
+  @GetMapping("/pubsub/stats")
+  public Map<String, Object> stats() {
+    return Map.of(
+        "processed", messageHandler.processed(),
+        "dedup", deduplicator.stats()
+    );
+  }
 
-      // publish() is async, get() blocks until complete
-      String messageId = publisher.publish(pubsubMessage).get();
+  // Bulk publish: JSON array or NDJSON body, parsed and published incrementally
+  @PostMapping(value = "/pubsub/publish/bulk", consumes = {"application/json", "application/x-ndjson"})
+  public ResponseEntity<Map<String, Object>> publishBulk(InputStream body) throws IOException, InterruptedException {
 
-      return Map.of(
-          "published", true,
-          "messageId", messageId,
-          "topic", topicName.toString(),
-          "payload", payload
-      );
+    if (projectId.isEmpty()) {
+      return ResponseEntity.ok(Map.of("error", "PROJECT_ID env var not set"));
+    }
 
-    } catch (Exception e) {
-      return Map.of(
-          "error", "Failed to publish: " + e.getMessage()
-      );
+    BulkPublisher.Result result = bulkPublisher.publish(topicId, body);
 
-    } finally {
-      if (publisher != null) {
-        publisher.shutdown();
-      }
+    Map<String, Object> response = new LinkedHashMap<>();
+    response.put("topic", TopicName.of(projectId, topicId).toString());
+    response.put("published", result.published());
+    response.put("failed", result.failed());
+    response.put("results", result.results());
+    if (result.error() != null) {
+      response.put("error", result.error());
+      return ResponseEntity.badRequest().body(response);
     }
+    return ResponseEntity.ok(response);
   }
 
   // Push subscription endpoint - Pub/Sub calls this
@@ -91,6 +164,12 @@ public class PubSubController {
         return ResponseEntity.badRequest().body("Invalid payload: missing 'message'");
       }
 
+      // Redelivery of something we already processed: ACK before decoding anything
+      String messageId = (String) message.get("messageId");
+      if (messageId != null && deduplicator.isDuplicate(messageId)) {
+        return ResponseEntity.ok("ACK");
+      }
+
       String dataBase64 = (String) message.get("data");
       if (dataBase64 == null) {
         return ResponseEntity.badRequest().body("Invalid payload: missing 'data'");
@@ -101,7 +180,12 @@ public class PubSubController {
           StandardCharsets.UTF_8
       );
 
-      System.out.println("Received Pub/Sub message: " + decoded);
+      @SuppressWarnings("unchecked")
+      Map<String, String> attributes = (Map<String, String>) message.getOrDefault("attributes", Map.of());
+      messageHandler.handle(messageId, decoded, attributes);
+      if (messageId != null) {
+        deduplicator.record(messageId);
+      }
 
       // HTTP 2xx = ACK (Pub/Sub won't retry)
       // HTTP != 2xx = NACK (Pub/Sub will retry)
@@ -0,0 +1,157 @@
+package com.example.lab07;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.batching.BatchingSettings;
+import com.google.api.gax.batching.FlowControlSettings;
+import com.google.api.gax.batching.FlowController;
+import com.google.api.gax.core.CredentialsProvider;
+import com.google.api.gax.core.InstantiatingExecutorProvider;
+import com.google.api.gax.rpc.TransportChannelProvider;
+import com.google.cloud.pubsub.v1.Publisher;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.pubsub.v1.PubsubMessage;
+import com.google.pubsub.v1.TopicName;
+
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+// One long-lived Publisher per topic. Publishers are thread-safe and batch messages
+// from all requests together, so building one per request throws away both the gRPC
+// channel and batching.
+// With message ordering on, messages sharing an ordering key are sent one batch at a time
+// in publish order while different keys are in flight concurrently; messages without a key
+// are batched as before.
+@Component
+public class PublisherRegistry {
+
+  private final String projectId;
+  private final ObjectProvider<TransportChannelProvider> channelProvider;
+  private final ObjectProvider<CredentialsProvider> credentialsProvider;
+  private final BatchingSettings batchingSettings;
+  private final int executorThreads;
+  private final boolean messageOrdering;
+  private final Duration drainTimeout;
+
+  private final ConcurrentMap<String, Publisher> publishers = new ConcurrentHashMap<>();
+  private final Set<String> pausedKeys = ConcurrentHashMap.newKeySet();
+
+  public PublisherRegistry(@Value("${pubsub.project-id}") String projectId,
+                           ObjectProvider<TransportChannelProvider> channelProvider,
+                           ObjectProvider<CredentialsProvider> credentialsProvider,
+                           @Value("${pubsub.publisher.batch.element-count}") long elementCount,
+                           @Value("${pubsub.publisher.batch.request-bytes}") long requestBytes,
+                           @Value("${pubsub.publisher.batch.delay}") Duration delay,
+                           @Value("${pubsub.publisher.flow-control.max-outstanding-messages}") long maxOutstandingMessages,
+                           @Value("${pubsub.publisher.flow-control.max-outstanding-bytes}") long maxOutstandingBytes,
+                           @Value("${pubsub.publisher.executor-threads}") int executorThreads,
+                           @Value("${pubsub.publisher.message-ordering}") boolean messageOrdering,
+                           @Value("${pubsub.publisher.drain-timeout}") Duration drainTimeout) {
+    this.projectId = projectId;
+    this.channelProvider = channelProvider;
+    this.credentialsProvider = credentialsProvider;
+    this.executorThreads = executorThreads;
+    this.messageOrdering = messageOrdering;
+    this.drainTimeout = drainTimeout;
+    this.batchingSettings = BatchingSettings.newBuilder()
+        .setElementCountThreshold(elementCount)
+        .setRequestByteThreshold(requestBytes)
+        .setDelayThreshold(org.threeten.bp.Duration.ofMillis(delay.toMillis()))
+        // Block publish() once too much is in flight: backpressure instead of unbounded memory
+        .setFlowControlSettings(FlowControlSettings.newBuilder()
+            .setMaxOutstandingElementCount(maxOutstandingMessages)
+            .setMaxOutstandingRequestBytes(maxOutstandingBytes)
+            .setLimitExceededBehavior(FlowController.LimitExceededBehavior.Block)
+            .build())
+        .build();
+  }
+
+  public Publisher forTopic(String topicId) {
+    return publishers.computeIfAbsent(topicId, this::create);
+  }
+
+  // Completes with the message id once the batch containing the message is acknowledged
+  public CompletableFuture<String> publish(String topicId, PubsubMessage message) {
+    Publisher publisher = forTopic(topicId);
+    String orderingKey = message.getOrderingKey();
+    if (orderingKey.isEmpty()) {
+      return toCompletable(publisher.publish(message));
+    }
+    if (!messageOrdering) {
+      return CompletableFuture.failedFuture(new IllegalStateException(
+          "orderingKey needs message ordering (PUBSUB_MESSAGE_ORDERING=true)"));
+    }
+    // A failed publish pauses its key: the client fails everything queued behind it and
+    // rejects new messages until resumePublish. The failure reaches callers before the
+    // key is paused, so resume on the key's next publish rather than in the callback.
+    String pausedKey = topicId + "/" + orderingKey;
+    if (pausedKeys.remove(pausedKey)) {
+      publisher.resumePublish(orderingKey);
+    }
+    CompletableFuture<String> published = toCompletable(publisher.publish(message));
+    published.whenComplete((messageId, error) -> {
+      if (error != null) {
+        pausedKeys.add(pausedKey);
+      }
+    });
+    return published;
+  }
+
+  // Flush pending batches before the instance goes away (Cloud Run sends SIGTERM first)
+  @PreDestroy
+  void drain() throws InterruptedException {
+    for (Publisher publisher : publishers.values()) {
+      publisher.shutdown();
+    }
+    for (Publisher publisher : publishers.values()) {
+      if (!publisher.awaitTermination(drainTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+        System.err.println("Publisher for " + publisher.getTopicNameString() + " did not drain in " + drainTimeout);
+      }
+    }
+  }
+
+  private Publisher create(String topicId) {
+    try {
+      Publisher.Builder builder = Publisher.newBuilder(TopicName.of(projectId, topicId))
+          .setBatchingSettings(batchingSettings)
+          .setEnableMessageOrdering(messageOrdering)
+          .setExecutorProvider(InstantiatingExecutorProvider.newBuilder()
+              .setExecutorThreadCount(executorThreads)
+              .build());
+      channelProvider.ifAvailable(builder::setChannelProvider);
+      credentialsProvider.ifAvailable(builder::setCredentialsProvider);
+      return builder.build();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to create publisher for " + topicId, e);
+    }
+  }
+
+  static <T> CompletableFuture<T> toCompletable(ApiFuture<T> future) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    ApiFutures.addCallback(future, new ApiFutureCallback<>() {
+      @Override
+      public void onSuccess(T value) {
+        result.complete(value);
+      }
+
+      @Override
+      public void onFailure(Throwable error) {
+        result.completeExceptionally(error);
+      }
+    }, MoreExecutors.directExecutor());
+    return result;
+  }
+}
@@ -0,0 +1,91 @@
+package com.example.lab07;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.google.api.gax.batching.FlowControlSettings;
+import com.google.api.gax.core.CredentialsProvider;
+import com.google.api.gax.core.InstantiatingExecutorProvider;
+import com.google.api.gax.rpc.TransportChannelProvider;
+import com.google.cloud.pubsub.v1.MessageReceiver;
+import com.google.cloud.pubsub.v1.Subscriber;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.pubsub.v1.ProjectSubscriptionName;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Streaming-pull alternative to push delivery, enabled with PUBSUB_PULL_ENABLED=true.
+// Messages go through the same MessageHandler as /pubsub/consume. The client library
+// groups acks into batched Acknowledge requests, so one message is not one RPC.
+@Component
+@ConditionalOnProperty(name = "pubsub.subscriber.enabled", havingValue = "true")
+public class PullSubscriber {
+
+  private final Subscriber subscriber;
+  private final Duration shutdownTimeout;
+
+  public PullSubscriber(MessageHandler handler,
+                        ObjectProvider<TransportChannelProvider> channelProvider,
+                        ObjectProvider<CredentialsProvider> credentialsProvider,
+                        @Value("${pubsub.project-id}") String projectId,
+                        @Value("${pubsub.subscription}") String subscriptionId,
+                        @Value("${pubsub.subscriber.parallel-pull-count}") int parallelPullCount,
+                        @Value("${pubsub.subscriber.executor-threads}") int executorThreads,
+                        @Value("${pubsub.subscriber.max-outstanding-messages}") long maxOutstandingMessages,
+                        @Value("${pubsub.subscriber.max-outstanding-bytes}") long maxOutstandingBytes,
+                        @Value("${pubsub.subscriber.shutdown-timeout}") Duration shutdownTimeout) {
+    this.shutdownTimeout = shutdownTimeout;
+
+    MessageReceiver receiver = (message, consumer) -> {
+      try {
+        handler.handle(message.getMessageId(), message.getData().toStringUtf8(), message.getAttributesMap());
+        consumer.ack();
+      } catch (Exception e) {
+        System.err.println("Failed to process message: " + e.getMessage());
+        consumer.nack();
+      }
+    };
+
+    Subscriber.Builder builder = Subscriber.newBuilder(ProjectSubscriptionName.of(projectId, subscriptionId), receiver)
+        .setParallelPullCount(parallelPullCount)
+        .setExecutorProvider(InstantiatingExecutorProvider.newBuilder()
+            .setExecutorThreadCount(executorThreads)
+            .build())
+        // Caps messages handed to us but not yet acked; the rest stay on the server
+        .setFlowControlSettings(FlowControlSettings.newBuilder()
+            .setMaxOutstandingElementCount(maxOutstandingMessages)
+            .setMaxOutstandingRequestBytes(maxOutstandingBytes)
+            .build());
+    channelProvider.ifAvailable(builder::setChannelProvider);
+    credentialsProvider.ifAvailable(builder::setCredentialsProvider);
+    this.subscriber = builder.build();
+  }
+
+  @PostConstruct
+  void start() {
+    subscriber.addListener(new Subscriber.Listener() {
+      @Override
+      public void failed(Subscriber.State from, Throwable failure) {
+        System.err.println("Subscriber failed: " + failure.getMessage());
+      }
+    }, MoreExecutors.directExecutor());
+    subscriber.startAsync();
+  }
+
+  // Stops pulling and waits for in-flight messages to be handled and acked
+  @PreDestroy
+  void stop() {
+    try {
+      subscriber.stopAsync().awaitTerminated(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException | IllegalStateException e) {
+      System.err.println("Subscriber did not stop cleanly: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,236 @@
+package com.example.lab07;
+
+import com.google.api.gax.core.CredentialsProvider;
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.api.gax.rpc.TransportChannelProvider;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Empty;
+import com.google.pubsub.v1.AcknowledgeRequest;
+import com.google.pubsub.v1.ModifyAckDeadlineRequest;
+import com.google.pubsub.v1.PublishRequest;
+import com.google.pubsub.v1.PublishResponse;
+import com.google.pubsub.v1.PublisherGrpc;
+import com.google.pubsub.v1.PubsubMessage;
+import com.google.pubsub.v1.ReceivedMessage;
+import com.google.pubsub.v1.StreamingPullRequest;
+import com.google.pubsub.v1.StreamingPullResponse;
+import com.google.pubsub.v1.SubscriberGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-process stand-in for the Pub/Sub emulator: records what the app publishes
+// and feeds streaming-pull subscribers from a backlog
+class FakePubSubServer implements AutoCloseable {
+
+  private final String name = InProcessServerBuilder.generateName();
+  private final Server server;
+  private final ManagedChannel channel;
+
+  final ConcurrentLinkedQueue<PubsubMessage> published = new ConcurrentLinkedQueue<>();
+  final AtomicInteger publishCalls = new AtomicInteger();
+  // Simulated Publish RPC round trip, so overlapping RPCs can be observed
+  volatile long publishLatencyMillis;
+  // Publish RPCs in flight per ordering key, and the high-water marks: RPCs for one key
+  // and distinct keys at the same time
+  private final ConcurrentHashMap<String, AtomicInteger> inFlightByKey = new ConcurrentHashMap<>();
+  final AtomicInteger maxInFlightPerKey = new AtomicInteger();
+  final AtomicInteger maxConcurrentKeys = new AtomicInteger();
+  private final AtomicLong nextId = new AtomicLong();
+
+  // Subscriber side: messages waiting for a streaming-pull stream, and acks received
+  private final BlockingQueue<PubsubMessage> backlog = new LinkedBlockingQueue<>();
+  final Set<String> acked = ConcurrentHashMap.newKeySet();
+  final AtomicInteger ackCalls = new AtomicInteger();
+
+  FakePubSubServer() throws IOException {
+    server = InProcessServerBuilder.forName(name)
+        .addService(new PublisherService())
+        .addService(new SubscriberService())
+        .build()
+        .start();
+    channel = InProcessChannelBuilder.forName(name).build();
+  }
+
+  TransportChannelProvider channelProvider() {
+    return FixedTransportChannelProvider.create(GrpcTransportChannel.create(channel));
+  }
+
+  List<PubsubMessage> messages() {
+    return List.copyOf(published);
+  }
+
+  String deliver(String data) {
+    String id = Long.toString(nextId.incrementAndGet());
+    backlog.add(PubsubMessage.newBuilder()
+        .setMessageId(id)
+        .setData(ByteString.copyFromUtf8(data))
+        .build());
+    return id;
+  }
+
+  @Override
+  public void close() {
+    channel.shutdownNow();
+    server.shutdownNow();
+  }
+
+  private class PublisherService extends PublisherGrpc.PublisherImplBase {
+    @Override
+    public void publish(PublishRequest request, StreamObserver<PublishResponse> responseObserver) {
+      publishCalls.incrementAndGet();
+      // Messages whose data starts with "fail:" reject the whole batch (non-retryable)
+      if (request.getMessagesList().stream().anyMatch(m -> m.getData().toStringUtf8().startsWith("fail:"))) {
+        responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("rejected by fake").asRuntimeException());
+        return;
+      }
+      Set<String> keys = new HashSet<>();
+      request.getMessagesList().forEach(m -> {
+        if (!m.getOrderingKey().isEmpty()) {
+          keys.add(m.getOrderingKey());
+        }
+      });
+      for (String key : keys) {
+        int inFlight = inFlightByKey.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+        maxInFlightPerKey.accumulateAndGet(inFlight, Math::max);
+      }
+      maxConcurrentKeys.accumulateAndGet(
+          (int) inFlightByKey.values().stream().filter(count -> count.get() > 0).count(), Math::max);
+      try {
+        if (publishLatencyMillis > 0) {
+          Thread.sleep(publishLatencyMillis);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        keys.forEach(key -> inFlightByKey.get(key).decrementAndGet());
+      }
+      PublishResponse.Builder response = PublishResponse.newBuilder();
+      for (PubsubMessage message : request.getMessagesList()) {
+        published.add(message);
+        response.addMessageIds(Long.toString(nextId.incrementAndGet()));
+      }
+      responseObserver.onNext(response.build());
+      responseObserver.onCompleted();
+    }
+  }
+
+  private class SubscriberService extends SubscriberGrpc.SubscriberImplBase {
+    @Override
+    public StreamObserver<StreamingPullRequest> streamingPull(StreamObserver<StreamingPullResponse> responseObserver) {
+      ServerCallStreamObserver<StreamingPullResponse> call =
+          (ServerCallStreamObserver<StreamingPullResponse>) responseObserver;
+      AtomicBoolean open = new AtomicBoolean(true);
+      call.setOnCancelHandler(() -> open.set(false));
+
+      // Pushes backlog to this stream in batches of up to 100 until the client goes away
+      Thread sender = new Thread(() -> {
+        while (open.get()) {
+          List<ReceivedMessage> batch = new ArrayList<>();
+          try {
+            PubsubMessage first = backlog.poll(50, TimeUnit.MILLISECONDS);
+            if (first == null) {
+              continue;
+            }
+            batch.add(received(first));
+            PubsubMessage next;
+            while (batch.size() < 100 && (next = backlog.poll()) != null) {
+              batch.add(received(next));
+            }
+            synchronized (call) {
+              call.onNext(StreamingPullResponse.newBuilder().addAllReceivedMessages(batch).build());
+            }
+          } catch (InterruptedException | RuntimeException e) {
+            open.set(false);
+          }
+        }
+      });
+      sender.setDaemon(true);
+      sender.start();
+
+      return new StreamObserver<>() {
+        @Override
+        public void onNext(StreamingPullRequest request) {
+          if (request.getAckIdsCount() > 0) {
+            ackCalls.incrementAndGet();
+            acked.addAll(request.getAckIdsList());
+          }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+          open.set(false);
+        }
+
+        @Override
+        public void onCompleted() {
+          open.set(false);
+          synchronized (call) {
+            call.onCompleted();
+          }
+        }
+      };
+    }
+
+    @Override
+    public void acknowledge(AcknowledgeRequest request, StreamObserver<Empty> responseObserver) {
+      ackCalls.incrementAndGet();
+      acked.addAll(request.getAckIdsList());
+      responseObserver.onNext(Empty.getDefaultInstance());
+      responseObserver.onCompleted();
+    }
+
+    @Override
+    public void modifyAckDeadline(ModifyAckDeadlineRequest request, StreamObserver<Empty> responseObserver) {
+      responseObserver.onNext(Empty.getDefaultInstance());
+      responseObserver.onCompleted();
+    }
+
+    private ReceivedMessage received(PubsubMessage message) {
+      return ReceivedMessage.newBuilder()
+          .setAckId("ack-" + message.getMessageId())
+          .setMessage(message)
+          .build();
+    }
+  }
+
+  @TestConfiguration
+  static class Config {
+    @Bean(destroyMethod = "close")
+    FakePubSubServer fakePubSubServer() throws IOException {
+      return new FakePubSubServer();
+    }
+
+    @Bean
+    TransportChannelProvider fakeChannelProvider(FakePubSubServer server) {
+      return server.channelProvider();
+    }
+
+    @Bean
+    CredentialsProvider fakeCredentialsProvider() {
+      return NoCredentialsProvider.create();
+    }
+  }
+}
@@ -7,6 +7,8 @@ import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -40,4 +42,38 @@ class PubSubControllerTest {
     assertEquals(HttpStatus.OK, response.getStatusCode());
     assertNotNull(response.getBody());
   }
+
+  @Test
+  void redeliveredPushMessageIsAckedOnce() {
+    Map<String, Object> push = Map.of(
+        "message", Map.of(
+            "messageId", "dedup-1",
+            "data", Base64.getEncoder().encodeToString("hello".getBytes(StandardCharsets.UTF_8))),
+        "subscription", "projects/p/subscriptions/s");
+
+    long before = ((Number) restTemplate.getForObject("/pubsub/stats", Map.class).get("processed")).longValue();
+    for (int i = 0; i < 3; i++) {
+      ResponseEntity<String> response = restTemplate.postForEntity("/pubsub/consume", push, String.class);
+      assertEquals(HttpStatus.OK, response.getStatusCode());
+      assertEquals("ACK", response.getBody());
+    }
+
+    Map stats = restTemplate.getForObject("/pubsub/stats", Map.class);
+    assertEquals(before + 1, ((Number) stats.get("processed")).longValue());
+    Map dedup = (Map) stats.get("dedup");
+    assertTrue(((Number) dedup.get("duplicates")).longValue() >= 2);
+    assertTrue(((Number) dedup.get("bytes")).longValue() > 0);
+  }
+
+  @Test
+  void malformedDataIsNackedAndNotRemembered() {
+    Map<String, Object> push = Map.of(
+        "message", Map.of("messageId", "dedup-bad", "data", "not base64!"),
+        "subscription", "projects/p/subscriptions/s");
+
+    for (int i = 0; i < 2; i++) {
+      ResponseEntity<String> response = restTemplate.postForEntity("/pubsub/consume", push, String.class);
+      assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
+    }
+  }
 }
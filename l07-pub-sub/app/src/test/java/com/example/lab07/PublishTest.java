@@ -0,0 +1,229 @@
+package com.example.lab07;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import com.google.api.gax.core.CredentialsProvider;
+import com.google.api.gax.rpc.TransportChannelProvider;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"pubsub.project-id=test-project", "pubsub.publisher.message-ordering=true"})
+@Import(FakePubSubServer.Config.class)
+class PublishTest {
+
+  @Autowired
+  private TestRestTemplate restTemplate;
+
+  @Autowired
+  private FakePubSubServer pubsub;
+
+  @Autowired
+  private ObjectProvider<TransportChannelProvider> channelProvider;
+
+  @Autowired
+  private ObjectProvider<CredentialsProvider> credentialsProvider;
+
+  @Autowired
+  private PublisherRegistry publishers;
+
+  @Test
+  void publishReturnsMessageId() {
+    ResponseEntity<Map> response = restTemplate.postForEntity(
+        "/pubsub/publish", Map.of("message", "sync"), Map.class);
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(true, response.getBody().get("published"));
+    assertNotNull(response.getBody().get("messageId"));
+  }
+
+  @Test
+  void asyncPublishReturnsAcceptedWithCorrelationId() throws Exception {
+    ResponseEntity<Map> response = restTemplate.postForEntity(
+        "/pubsub/publish?async=true", Map.of("message", "async"), Map.class);
+
+    assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+    String correlationId = (String) response.getBody().get("correlationId");
+    assertNotNull(correlationId);
+
+    awaitMessage(correlationId);
+  }
+
+  @Test
+  void publishesAreBatchedAcrossRequests() throws Exception {
+    int messages = 500;
+    int callsBefore = pubsub.publishCalls.get();
+    int publishedBefore = pubsub.published.size();
+
+    ExecutorService clients = Executors.newFixedThreadPool(32);
+    long start = System.nanoTime();
+    List<Future<ResponseEntity<Map>>> responses = new ArrayList<>();
+    for (int i = 0; i < messages; i++) {
+      String body = "m" + i;
+      responses.add(clients.submit(() -> restTemplate.postForEntity(
+          "/pubsub/publish", Map.of("message", body), Map.class)));
+    }
+    for (Future<ResponseEntity<Map>> response : responses) {
+      assertEquals(true, response.get().getBody().get("published"));
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    clients.shutdown();
+
+    int calls = pubsub.publishCalls.get() - callsBefore;
+    assertEquals(messages, pubsub.published.size() - publishedBefore);
+    // One shared publisher batches concurrent requests into fewer RPCs
+    assertTrue(calls < messages, "expected batching, got " + calls + " publish RPCs");
+    System.out.printf("publish: %d messages in %.2fs (%.0f msg/s), %d publish RPCs%n",
+        messages, seconds, messages / seconds, calls);
+  }
+
+  @Test
+  void bulkPublishAcceptsJsonArray() {
+    List<Object> body = List.of("plain", Map.of("message", "with-attrs", "attributes", Map.of("source", "bulk")));
+    ResponseEntity<Map> response = restTemplate.postForEntity("/pubsub/publish/bulk", body, Map.class);
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(2, response.getBody().get("published"));
+    List<Map<String, Object>> results = (List<Map<String, Object>>) response.getBody().get("results");
+    assertEquals(2, results.size());
+    assertNotNull(results.get(1).get("messageId"));
+    assertTrue(pubsub.messages().stream().anyMatch(m -> "bulk".equals(m.getAttributesMap().get("source"))));
+  }
+
+  @Test
+  void bulkPublishAcceptsNdjsonAndReportsBadElement() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.parseMediaType("application/x-ndjson"));
+    String body = "{\"message\":\"one\"}\n{\"message\":\"two\"}\n{\"nope\":1}\n{\"message\":\"never\"}\n";
+
+    ResponseEntity<Map> response = restTemplate.postForEntity(
+        "/pubsub/publish/bulk", new HttpEntity<>(body, headers), Map.class);
+
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    assertEquals(2, response.getBody().get("published"));
+    assertTrue(((String) response.getBody().get("error")).contains("index 2"));
+  }
+
+  @Test
+  void orderingKeyKeepsPerKeyOrder() throws Exception {
+    int keys = 4;
+    int perKey = 25;
+    List<CompletableFuture<String>> pending = new ArrayList<>();
+    for (int i = 0; i < perKey; i++) {
+      for (int k = 0; k < keys; k++) {
+        pending.add(publishers.publish("lab07-topic", ordered("order-" + k, "order-" + k + ":" + i)));
+      }
+    }
+    CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+
+    for (int k = 0; k < keys; k++) {
+      String key = "order-" + k;
+      List<String> received = pubsub.messages().stream()
+          .filter(m -> key.equals(m.getOrderingKey()))
+          .map(m -> m.getData().toStringUtf8())
+          .toList();
+      List<String> expected = new ArrayList<>();
+      for (int i = 0; i < perKey; i++) {
+        expected.add(key + ":" + i);
+      }
+      assertEquals(expected, received);
+    }
+  }
+
+  @Test
+  void orderingKeyResumesAfterFailure() throws Exception {
+    ResponseEntity<Map> failed = restTemplate.postForEntity(
+        "/pubsub/publish", Map.of("message", "fail:first", "orderingKey", "resume"), Map.class);
+    assertNotNull(failed.getBody().get("error"));
+
+    ResponseEntity<Map> next = restTemplate.postForEntity(
+        "/pubsub/publish", Map.of("message", "second", "orderingKey", "resume"), Map.class);
+    assertEquals(true, next.getBody().get("published"), String.valueOf(next.getBody()));
+    assertEquals("resume", next.getBody().get("orderingKey"));
+  }
+
+  @Test
+  void distinctKeysArePipelinedAndEachKeyIsSerial() throws Exception {
+    int keys = 8;
+    int perKey = 50;
+    pubsub.publishLatencyMillis = 20;
+    pubsub.maxInFlightPerKey.set(0);
+    pubsub.maxConcurrentKeys.set(0);
+    try {
+      List<CompletableFuture<String>> pending = new ArrayList<>();
+      for (int i = 0; i < perKey; i++) {
+        for (int k = 0; k < keys; k++) {
+          pending.add(publishers.publish("lab07-topic", ordered("pipe-" + k, "p" + i)));
+        }
+      }
+      CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+    } finally {
+      pubsub.publishLatencyMillis = 0;
+    }
+
+    // One batch per key at a time, but different keys' batches overlap
+    assertEquals(1, pubsub.maxInFlightPerKey.get());
+    assertTrue(pubsub.maxConcurrentKeys.get() > 1,
+        "expected publish RPCs for different keys to overlap, max was " + pubsub.maxConcurrentKeys.get());
+  }
+
+  @Test
+  void orderingKeyRejectedWhenOrderingIsOff() throws Exception {
+    PublisherRegistry unordered = new PublisherRegistry("test-project",
+        channelProvider, credentialsProvider,
+        100, 1_000_000, Duration.ofMillis(10), 1000, 1_000_000, 1, false, Duration.ofSeconds(1));
+    try {
+      ExecutionException error = assertThrows(ExecutionException.class,
+          () -> unordered.publish("lab07-topic", ordered("k", "x")).get(5, TimeUnit.SECONDS));
+      assertTrue(error.getCause() instanceof IllegalStateException);
+      assertNotNull(unordered.publish("lab07-topic", PubsubMessage.newBuilder()
+          .setData(ByteString.copyFromUtf8("unkeyed")).build()).get(5, TimeUnit.SECONDS));
+    } finally {
+      unordered.drain();
+    }
+  }
+
+  private static PubsubMessage ordered(String key, String data) {
+    return PubsubMessage.newBuilder()
+        .setOrderingKey(key)
+        .setData(ByteString.copyFromUtf8(data))
+        .build();
+  }
+
+  private void awaitMessage(String correlationId) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (System.currentTimeMillis() < deadline) {
+      boolean found = pubsub.messages().stream()
+          .anyMatch(m -> correlationId.equals(m.getAttributesMap().get("correlationId")));
+      if (found) {
+        return;
+      }
+      Thread.sleep(20);
+    }
+    fail("message " + correlationId + " was not published");
+  }
+}
@@ -0,0 +1,92 @@
+package com.example.lab07;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Push vs streaming pull through the same MessageHandler, against the in-process fake
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "pubsub.project-id=test-project",
+        "pubsub.subscription=test-subscription",
+        "pubsub.subscriber.enabled=true",
+        "pubsub.subscriber.parallel-pull-count=2"
+    })
+@Import(FakePubSubServer.Config.class)
+class SubscriberModesTest {
+
+  private static final int MESSAGES = 300;
+
+  @Autowired
+  private TestRestTemplate restTemplate;
+
+  @Autowired
+  private FakePubSubServer pubsub;
+
+  @Autowired
+  private MessageHandler handler;
+
+  @Test
+  void streamingPullHandlesAndBatchesAcks() throws Exception {
+    int ackCallsBefore = pubsub.ackCalls.get();
+    List<String> ids = new ArrayList<>();
+
+    long start = System.nanoTime();
+    for (int i = 0; i < MESSAGES; i++) {
+      ids.add(pubsub.deliver("pull-" + i));
+    }
+    long deadline = System.currentTimeMillis() + 20_000;
+    while (!pubsub.acked.containsAll(ids.stream().map(id -> "ack-" + id).toList())) {
+      assertTrue(System.currentTimeMillis() < deadline, "messages were not acked in time");
+      Thread.sleep(10);
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    int ackCalls = pubsub.ackCalls.get() - ackCallsBefore;
+    assertTrue(ackCalls < MESSAGES, "expected batched acks, got " + ackCalls + " ack requests");
+    System.out.printf("pull: %d messages in %.2fs (%.0f msg/s), %d ack requests%n",
+        MESSAGES, seconds, MESSAGES / seconds, ackCalls);
+  }
+
+  @Test
+  void pushEndpointUsesSameHandler() throws Exception {
+    long processedBefore = handler.processed();
+
+    ExecutorService clients = Executors.newFixedThreadPool(16);
+    long start = System.nanoTime();
+    List<Future<HttpStatus>> responses = new ArrayList<>();
+    for (int i = 0; i < MESSAGES; i++) {
+      Map<String, Object> push = Map.of(
+          "message", Map.of(
+              "messageId", "push-" + i,
+              "data", Base64.getEncoder().encodeToString(("push-" + i).getBytes(StandardCharsets.UTF_8))),
+          "subscription", "projects/test-project/subscriptions/push");
+      responses.add(clients.submit(() ->
+          (HttpStatus) restTemplate.postForEntity("/pubsub/consume", push, String.class).getStatusCode()));
+    }
+    for (Future<HttpStatus> response : responses) {
+      assertEquals(HttpStatus.OK, response.get());
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    clients.shutdown();
+
+    assertTrue(handler.processed() - processedBefore >= MESSAGES);
+    System.out.printf("push: %d messages in %.2fs (%.0f msg/s), %d HTTP requests%n",
+        MESSAGES, seconds, MESSAGES / seconds, MESSAGES);
+  }
+}
@@ -0,0 +1,67 @@
+package com.example.lab09;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Primary pool from spring.datasource.*, one pool per URL in db.replica.urls, and a
+// routing DataSource in front of them. With no replicas everything uses the primary.
+@Configuration
+@Profile("!reactive")
+public class DataSourceConfig {
+
+  @Bean
+  @ConfigurationProperties("spring.datasource.hikari")
+  public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+    HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    dataSource.setPoolName("primary");
+    return dataSource;
+  }
+
+  @Bean
+  public ReadWriteRoutingDataSource routingDataSource(
+    HikariDataSource primaryDataSource,
+    DataSourceProperties properties,
+    @Value("${db.replica.urls}") String replicaUrls,
+    @Value("${db.replica.maximum-pool-size}") int maximumPoolSize,
+    @Value("${db.replica.minimum-idle}") int minimumIdle,
+    @Value("${db.replica.connection-timeout}") long connectionTimeout,
+    @Value("${db.replica.strategy}") ReadWriteRoutingDataSource.Strategy strategy,
+    @Value("${db.replica.down-for}") Duration downFor) {
+
+    List<HikariDataSource> replicas = new ArrayList<>();
+    List<String> urls = Arrays.stream(replicaUrls.split(",")).map(String::trim).filter(url -> !url.isEmpty()).toList();
+    for (int i = 0; i < urls.size(); i++) {
+      HikariDataSource replica = new HikariDataSource();
+      replica.setPoolName("replica-" + i);
+      replica.setJdbcUrl(urls.get(i));
+      replica.setUsername(properties.determineUsername());
+      replica.setPassword(properties.determinePassword());
+      replica.setMaximumPoolSize(maximumPoolSize);
+      replica.setMinimumIdle(minimumIdle);
+      // Short timeout so a dead replica falls back to the primary quickly
+      replica.setConnectionTimeout(connectionTimeout);
+      replica.setReadOnly(true);
+      replicas.add(replica);
+    }
+    return new ReadWriteRoutingDataSource(primaryDataSource, replicas, strategy, downFor);
+  }
+
+  @Bean
+  @Primary
+  public DataSource dataSource(ReadWriteRoutingDataSource routingDataSource) {
+    return new LazyConnectionDataSourceProxy(routingDataSource);
+  }
+}
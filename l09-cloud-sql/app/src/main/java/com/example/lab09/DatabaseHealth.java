@@ -0,0 +1,59 @@
+package com.example.lab09;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.time.Instant;
+
+// Connection-validity probe for /health, cached so frequent Cloud Run and load balancer
+// probes cost at most one Connection.isValid() per interval. No table is touched.
+@Component
+@Profile("!reactive")
+public class DatabaseHealth {
+
+  private final HikariDataSource primaryDataSource;
+  private final Duration cacheFor;
+  private final int validationTimeoutSeconds;
+
+  private volatile Result last;
+
+  public DatabaseHealth(HikariDataSource primaryDataSource,
+                        @Value("${db.health.cache-for}") Duration cacheFor,
+                        @Value("${db.health.validation-timeout}") Duration validationTimeout) {
+    this.primaryDataSource = primaryDataSource;
+    this.cacheFor = cacheFor;
+    this.validationTimeoutSeconds = (int) Math.max(1, validationTimeout.toSeconds());
+  }
+
+  public Result check() {
+    Result result = last;
+    if (result != null && result.checkedAt().plus(cacheFor).isAfter(Instant.now())) {
+      return result;
+    }
+    synchronized (this) {
+      // Concurrent probes wait for one check instead of each opening a connection
+      result = last;
+      if (result == null || !result.checkedAt().plus(cacheFor).isAfter(Instant.now())) {
+        result = probe();
+        last = result;
+      }
+      return result;
+    }
+  }
+
+  private Result probe() {
+    try (Connection connection = primaryDataSource.getConnection()) {
+      boolean valid = connection.isValid(validationTimeoutSeconds);
+      return new Result(valid, valid ? null : "connection is not valid", Instant.now());
+    } catch (Exception e) {
+      return new Result(false, e.getMessage(), Instant.now());
+    }
+  }
+
+  public record Result(boolean healthy, String error, Instant checkedAt) {
+  }
+}
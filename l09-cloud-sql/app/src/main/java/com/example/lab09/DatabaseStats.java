@@ -0,0 +1,78 @@
+package com.example.lab09;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Approximate item count refreshed in the background, so "/" never runs COUNT(*).
+// On PostgreSQL it reads the planner estimate (pg_class.reltuples, kept current by
+// autovacuum/ANALYZE); elsewhere, or while the estimate is unknown, it falls back to COUNT(*).
+@Component
+@Profile("!reactive")
+public class DatabaseStats {
+
+  private static final Logger logger = LoggerFactory.getLogger(DatabaseStats.class);
+
+  // Also used by ReactiveItemStore
+  static final String ESTIMATE_SQL =
+    "SELECT reltuples::bigint FROM pg_class WHERE oid = to_regclass('items')";
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private ItemRepository itemRepository;
+
+  private final TransactionTemplate readOnly;
+
+  private volatile Long itemCount;
+  private volatile boolean estimated;
+  private volatile Instant refreshedAt;
+
+  public DatabaseStats(PlatformTransactionManager transactionManager) {
+    // Read-only so the refresh runs on a replica when there is one
+    this.readOnly = new TransactionTemplate(transactionManager);
+    this.readOnly.setReadOnly(true);
+  }
+
+  @Scheduled(fixedDelayString = "${db.stats.refresh-interval-ms}")
+  public void refresh() {
+    try {
+      readOnly.executeWithoutResult(status -> {
+        Long estimate = isPostgres() ? jdbcTemplate.queryForObject(ESTIMATE_SQL, Long.class) : null;
+        // -1 means never analyzed (PostgreSQL 14+), 0 is also what older versions report
+        // before the first ANALYZE, so neither is trusted
+        estimated = estimate != null && estimate > 0;
+        itemCount = estimated ? estimate : itemRepository.count();
+      });
+      refreshedAt = Instant.now();
+    } catch (RuntimeException e) {
+      // Keep the last known value; /health reports connectivity
+      logger.warn("Stats refresh failed: {}", e.getMessage());
+    }
+  }
+
+  public Map<String, Object> snapshot() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("items_in_db", itemCount);
+    stats.put("items_in_db_estimated", estimated);
+    stats.put("items_in_db_as_of", refreshedAt == null ? null : refreshedAt.toString());
+    return stats;
+  }
+
+  private boolean isPostgres() {
+    String product = jdbcTemplate.execute((Connection connection) -> connection.getMetaData().getDatabaseProductName());
+    return "PostgreSQL".equals(product);
+  }
+}
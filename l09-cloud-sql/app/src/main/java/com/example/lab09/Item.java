@@ -1,14 +1,21 @@
 package com.example.lab09;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "items")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "items")
+@Table(name = "items", indexes = @Index(name = "idx_items_created_at_id", columnList = "created_at, id"))
 public class Item {
 
+  // Sequence ids (pooled, 50 per round trip) instead of IDENTITY: Hibernate must know
+  // the id before the INSERT, otherwise it cannot batch inserts at all
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "items_seq")
+  @SequenceGenerator(name = "items_seq", sequenceName = "items_seq", allocationSize = 50)
   private Long id;
 
   @Column(nullable = false)
@@ -19,6 +26,11 @@ public class Item {
   @Column(name = "created_at")
   private LocalDateTime createdAt;
 
+  // Optimistic locking: bumped on every update, exposed as the ETag
+  @Version
+  @Column(nullable = false, columnDefinition = "bigint default 0")
+  private Long version;
+
   // Constructors
   public Item() {
     this.createdAt = LocalDateTime.now();
@@ -62,4 +74,12 @@ public class Item {
   public void setCreatedAt(LocalDateTime createdAt) {
     this.createdAt = createdAt;
   }
+
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(Long version) {
+    this.version = version;
+  }
 }
@@ -0,0 +1,59 @@
+package com.example.lab09;
+
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Inserts many items with JDBC batching, one transaction per chunk.
+// persist() only queues the INSERT (ids come from the pooled sequence), the flush at the
+// end of a chunk sends them as batches of hibernate.jdbc.batch_size, and clear() keeps
+// the persistence context from growing across chunks.
+@Component
+@Profile("!reactive")
+public class ItemBulkLoader {
+
+  @Autowired
+  private EntityManager entityManager;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @Value("${items.bulk.chunk-size}")
+  private int chunkSize;
+
+  public Result insert(List<Item> items) {
+    int inserted = 0;
+    int chunks = 0;
+    for (int from = 0; from < items.size(); from += chunkSize) {
+      List<Item> chunk = items.subList(from, Math.min(from + chunkSize, items.size()));
+      try {
+        transactionTemplate.executeWithoutResult(status -> {
+          for (Item item : chunk) {
+            item.setId(null);
+            if (item.getCreatedAt() == null) {
+              item.setCreatedAt(LocalDateTime.now());
+            }
+            entityManager.persist(item);
+          }
+          entityManager.flush();
+          entityManager.clear();
+        });
+      } catch (RuntimeException e) {
+        // Earlier chunks are committed; report how far we got
+        return new Result(inserted, chunks, "Chunk starting at index " + from + " failed: " + e.getMessage());
+      }
+      inserted += chunk.size();
+      chunks++;
+    }
+    return new Result(inserted, chunks, null);
+  }
+
+  public record Result(int inserted, int chunks, String error) {
+  }
+}
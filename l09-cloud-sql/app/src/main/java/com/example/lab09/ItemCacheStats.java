@@ -0,0 +1,59 @@
+package com.example.lab09;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Hit/miss/put counts from Hibernate's statistics for the "items" region, plus
+// evictions from the JCache statistics MBean (size/TTL evictions happen inside Caffeine)
+@Component
+@Profile("!reactive")
+public class ItemCacheStats {
+
+  private static final String REGION = "items";
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  public Map<String, Object> snapshot() {
+    CacheRegionStatistics region = entityManagerFactory.unwrap(SessionFactory.class)
+      .getStatistics()
+      .getDomainDataRegionStatistics(REGION);
+
+    long hits = region.getHitCount();
+    long misses = region.getMissCount();
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("region", REGION);
+    stats.put("hits", hits);
+    stats.put("misses", misses);
+    stats.put("hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+    stats.put("puts", region.getPutCount());
+    stats.put("evictions", evictions());
+    return stats;
+  }
+
+  private long evictions() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      Set<ObjectName> names = server.queryNames(
+        new ObjectName("javax.cache:type=CacheStatistics,Cache=" + REGION + ",*"), null);
+      long evictions = 0;
+      for (ObjectName name : names) {
+        evictions += (Long) server.getAttribute(name, "CacheEvictions");
+      }
+      return evictions;
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+}
@@ -1,46 +1,89 @@
 package com.example.lab09;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+// Blocking JPA stack (default). The "reactive" profile serves the CRUD endpoints from
+// ReactiveItemController instead.
 @RestController
+@Profile("!reactive")
 public class ItemController {
 
+  private static final int MAX_PAGE_SIZE = 1000;
+
   @Autowired
   private ItemRepository itemRepository;
 
+  @Autowired
+  private ItemExporter itemExporter;
+
+  @Autowired
+  private ItemBulkLoader itemBulkLoader;
+
+  @Autowired
+  private ItemCacheStats itemCacheStats;
+
+  @Autowired
+  private ReadWriteRoutingDataSource routingDataSource;
+
+  @Autowired
+  private DatabaseStats databaseStats;
+
+  @Autowired
+  private DatabaseHealth databaseHealth;
+
+  @Autowired
+  private ItemSearch itemSearch;
+
+  @Autowired
+  private ItemPatcher itemPatcher;
+
+  @Autowired
+  private ItemCopy itemCopy;
+
   @GetMapping("/")
   public Map<String, Object> root() {
-    long count = itemRepository.count();
-    return Map.of(
-      "service", "lab09-cloud-sql",
-      "description", "Cloud Run + Cloud SQL PostgreSQL",
-      "items_in_db", count
-    );
+    // Approximate count from the background stats refresh; no COUNT(*) per request
+    Map<String, Object> root = new LinkedHashMap<>();
+    root.put("service", "lab09-cloud-sql");
+    root.put("description", "Cloud Run + Cloud SQL PostgreSQL");
+    root.putAll(databaseStats.snapshot());
+    return root;
   }
 
+  // Connection check only, cached for db.health.cache-for
   @GetMapping("/health")
   public ResponseEntity<Map<String, Object>> health() {
-    try {
-      // Check database connectivity
-      long count = itemRepository.count();
-      return ResponseEntity.ok(Map.of(
-        "status", "UP",
-        "database", "connected",
-        "items_count", count
-      ));
-    } catch (Exception e) {
-      return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
-        "status", "DOWN",
-        "database", "disconnected",
-        "error", e.getMessage()
-      ));
+    DatabaseHealth.Result result = databaseHealth.check();
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("healthy", result.healthy());
+    body.put("status", result.healthy() ? "UP" : "DOWN");
+    body.put("database", result.healthy() ? "connected" : "disconnected");
+    body.put("checked_at", result.checkedAt().toString());
+    if (result.error() != null) {
+      body.put("error", result.error());
     }
+    return ResponseEntity.status(result.healthy() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).body(body);
+  }
+
+  // Connection pools: primary and replicas, with usage and health
+  @GetMapping("/db/pools")
+  public List<Map<String, Object>> pools() {
+    return routingDataSource.pools();
   }
 
   // CREATE
@@ -50,21 +93,157 @@ public class ItemController {
     return ResponseEntity.status(HttpStatus.CREATED).body(saved);
   }
 
-  // READ ALL
+  // BULK CREATE - JSON array of items, batched inserts committed in chunks
+  @PostMapping("/items/bulk")
+  public ResponseEntity<Map<String, Object>> createItems(@RequestBody List<Item> items) {
+    for (int i = 0; i < items.size(); i++) {
+      if (items.get(i).getName() == null) {
+        return ResponseEntity.badRequest().body(Map.of("error", "Item at index " + i + " has no name"));
+      }
+    }
+
+    long start = System.nanoTime();
+    ItemBulkLoader.Result result = itemBulkLoader.insert(items);
+    long millis = (System.nanoTime() - start) / 1_000_000;
+
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("inserted", result.inserted());
+    body.put("chunks", result.chunks());
+    body.put("millis", millis);
+    if (result.error() != null) {
+      body.put("error", result.error());
+      return ResponseEntity.internalServerError().body(body);
+    }
+    return ResponseEntity.status(HttpStatus.CREATED).body(body);
+  }
+
+  // READ ALL - one keyset page ordered by (created_at, id).
+  // Pass the Next-Cursor response header back as ?after= to get the next page.
   @GetMapping("/items")
-  public List<Item> getAllItems() {
-    return itemRepository.findAll();
+  public ResponseEntity<?> getAllItems(
+    @RequestParam(defaultValue = "100") int limit,
+    @RequestParam(required = false) String after) {
+
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      return ResponseEntity.badRequest().body(Map.of("error", "limit must be between 1 and " + MAX_PAGE_SIZE));
+    }
+
+    List<Item> page;
+    if (after == null) {
+      page = itemRepository.findAllByOrderByCreatedAtAscIdAsc(Limit.of(limit));
+    } else {
+      ItemCursor cursor;
+      try {
+        cursor = ItemCursor.decode(after);
+      } catch (IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+      }
+      page = itemRepository.findPageAfter(cursor.createdAt(), cursor.id(), Limit.of(limit));
+    }
+
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+    if (page.size() == limit) {
+      response.header("Next-Cursor", ItemCursor.of(page.get(page.size() - 1)).encode());
+    }
+    return response.body(page);
+  }
+
+  // SEARCH - full-text over name and description, best matches first
+  @GetMapping("/items/search")
+  public ResponseEntity<Map<String, Object>> searchItems(
+    @RequestParam String q,
+    @RequestParam(defaultValue = "20") int limit,
+    @RequestParam(defaultValue = "0") int offset) {
+
+    if (q.isBlank()) {
+      return ResponseEntity.badRequest().body(Map.of("error", "q must not be empty"));
+    }
+    if (limit < 1 || limit > MAX_PAGE_SIZE || offset < 0) {
+      return ResponseEntity.badRequest().body(Map.of("error", "limit must be between 1 and " + MAX_PAGE_SIZE + ", offset >= 0"));
+    }
+
+    List<Map<String, Object>> results = itemSearch.search(q.trim(), limit, offset);
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("query", q);
+    body.put("ranked", itemSearch.ranked());
+    body.put("results", results);
+    if (results.size() == limit) {
+      body.put("next_offset", offset + limit);
+    }
+    return ResponseEntity.ok(body);
+  }
+
+  // EXPORT ALL - NDJSON streamed from a database cursor, constant memory
+  @GetMapping(value = "/items/export", produces = "application/x-ndjson")
+  public ResponseEntity<StreamingResponseBody> exportItems() {
+    return ResponseEntity.ok()
+      .contentType(MediaType.parseMediaType("application/x-ndjson"))
+      .body(keepingPrimaryPin(out -> itemExporter.export(out)));
+  }
+
+  // EXPORT ALL as CSV - PostgreSQL COPY straight into the response
+  @GetMapping(value = "/items/export", params = "format=csv")
+  public ResponseEntity<StreamingResponseBody> exportItemsCsv() {
+    if (!itemCopy.supported()) {
+      return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).build();
+    }
+    return ResponseEntity.ok()
+      .contentType(MediaType.parseMediaType("text/csv"))
+      .body(keepingPrimaryPin(out -> {
+        try {
+          itemCopy.exportCsv(out);
+        } catch (SQLException e) {
+          throw new IOException("COPY export failed", e);
+        }
+      }));
+  }
+
+  // Streaming bodies are written on an async thread after ReplicaStickinessFilter has
+  // released the request thread's primary pin, so capture it now and reapply it there
+  private static StreamingResponseBody keepingPrimaryPin(StreamingResponseBody body) {
+    boolean pinned = ReadWriteRoutingDataSource.isPrimaryOnly();
+    return out -> {
+      ReadWriteRoutingDataSource.primaryOnly(pinned);
+      try {
+        body.writeTo(out);
+      } finally {
+        ReadWriteRoutingDataSource.primaryOnly(false);
+      }
+    };
   }
 
-  // READ ONE
+  // IMPORT CSV - request body streamed into PostgreSQL COPY, one transaction
+  @PostMapping(value = "/items/import", consumes = "text/csv")
+  public ResponseEntity<Map<String, Object>> importItems(InputStream body) throws IOException {
+    if (!itemCopy.supported()) {
+      return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED)
+        .body(Map.of("error", "CSV import needs PostgreSQL (COPY)"));
+    }
+    try {
+      long imported = itemCopy.importCsv(body);
+      return ResponseEntity.status(HttpStatus.CREATED).body(Map.of("imported", imported));
+    } catch (SQLException | IllegalArgumentException e) {
+      // Malformed CSV, unknown columns or constraint violation; nothing was imported
+      return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+  }
+
+  // Second-level cache hit ratio and evictions for Item
+  @GetMapping("/items/cache/stats")
+  public Map<String, Object> cacheStats() {
+    return itemCacheStats.snapshot();
+  }
+
+  // READ ONE - served from the second-level cache when possible (no pool connection).
+  // The ETag is the version, to send back as If-Match on PATCH.
   @GetMapping("/items/{id}")
   public ResponseEntity<Item> getItem(@PathVariable Long id) {
     return itemRepository.findById(id)
-      .map(ResponseEntity::ok)
+      .map(item -> ResponseEntity.ok().eTag(String.valueOf(item.getVersion())).body(item))
       .orElse(ResponseEntity.notFound().build());
   }
 
-  // UPDATE
+  // UPDATE - Hibernate refreshes the cached entry when the transaction commits
   @PutMapping("/items/{id}")
   public ResponseEntity<Item> updateItem(@PathVariable Long id, @RequestBody Item updatedItem) {
     return itemRepository.findById(id)
@@ -77,7 +256,43 @@ public class ItemController {
       .orElse(ResponseEntity.notFound().build());
   }
 
-  // DELETE
+  // PATCH - one conditional UPDATE (no read); If-Match (or "version" in the body) must be the current version
+  @PatchMapping("/items/{id}")
+  public ResponseEntity<Map<String, Object>> patchItem(
+    @PathVariable Long id,
+    @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+    @RequestBody Map<String, Object> patch) {
+
+    Long version = null;
+    if (ifMatch != null) {
+      try {
+        version = Long.valueOf(ifMatch.replace("W/", "").replace("\"", "").trim());
+      } catch (NumberFormatException e) {
+        return ResponseEntity.badRequest().body(Map.of("error", "If-Match must be an item version"));
+      }
+    } else if (patch.get("version") instanceof Number number) {
+      version = number.longValue();
+    }
+    if (version == null) {
+      return ResponseEntity.status(HttpStatus.PRECONDITION_REQUIRED)
+        .body(Map.of("error", "Send the item version as If-Match or \"version\""));
+    }
+    if (patch.containsKey("name") && !(patch.get("name") instanceof String)) {
+      return ResponseEntity.badRequest().body(Map.of("error", "name must be a string"));
+    }
+    if (patch.get("description") != null && !(patch.get("description") instanceof String)) {
+      return ResponseEntity.badRequest().body(Map.of("error", "description must be a string or null"));
+    }
+
+    return switch (itemPatcher.patch(id, version, patch)) {
+      case UPDATED -> ResponseEntity.noContent().eTag(String.valueOf(version + 1)).build();
+      case CONFLICT -> ResponseEntity.status(HttpStatus.CONFLICT)
+        .body(Map.of("error", "Item " + id + " was modified; version " + version + " is stale"));
+      case NOT_FOUND -> ResponseEntity.notFound().build();
+    };
+  }
+
+  // DELETE - Hibernate evicts the cached entry when the transaction commits
   @DeleteMapping("/items/{id}")
   public ResponseEntity<Void> deleteItem(@PathVariable Long id) {
     if (itemRepository.existsById(id)) {
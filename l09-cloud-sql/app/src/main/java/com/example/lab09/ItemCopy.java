@@ -0,0 +1,140 @@
+package com.example.lab09;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// CSV import/export over PostgreSQL's COPY protocol: bytes go straight between the HTTP
+// body and the database connection, no entities and no buffering beyond the driver's.
+@Component
+@Profile("!reactive")
+public class ItemCopy {
+
+  private static final String EXPORT_SQL =
+    "COPY (SELECT id, name, description, created_at, version FROM items ORDER BY id)"
+      + " TO STDOUT WITH (FORMAT csv, HEADER true)";
+
+  // Columns an import may have, in any order: the export layout or a subset with name.
+  // id and version are accepted so an export re-imports as-is, but new ids are assigned.
+  private static final List<String> IMPORT_COLUMNS = List.of("id", "name", "description", "created_at", "version");
+
+  // COPY into a temp table first so ids come from items_seq
+  private static final String IMPORT_TABLE_SQL =
+    "CREATE TEMP TABLE items_import (id bigint, name text, description text, created_at timestamp,"
+      + " version bigint) ON COMMIT DROP";
+
+  // One nextval per 50 rows, used the way Hibernate's pooled optimizer uses it (items_seq
+  // steps by Item's allocationSize of 50): a value v covers ids v-49..v, so imported ids
+  // never collide with ids Hibernate hands out. On a fresh sequence the first value is 1,
+  // which Hibernate treats as the start of its first block; the import skips past it.
+  private static final String IMPORT_INSERT_SQL =
+    "WITH rows AS (SELECT name, description, created_at, row_number() OVER () - 1 AS n FROM items_import),"
+      + " blocks AS MATERIALIZED ("
+      + "   SELECT b, CASE WHEN v = 1 THEN nextval('items_seq') ELSE v END AS hi"
+      + "   FROM (SELECT b, nextval('items_seq') AS v"
+      + "         FROM generate_series(0, (SELECT (count(*) + 49) / 50 - 1 FROM items_import)) b) s)"
+      + " INSERT INTO items (id, name, description, created_at, version)"
+      + " SELECT blocks.hi - 49 + rows.n % 50, rows.name, rows.description, COALESCE(rows.created_at, now()), 0"
+      + " FROM rows JOIN blocks ON blocks.b = rows.n / 50";
+
+  @Autowired
+  private DataSource dataSource;
+
+  private volatile Boolean supported;
+
+  // Header line then one row per item: id,name,description,created_at,version
+  @Transactional(readOnly = true)
+  public long exportCsv(OutputStream out) throws SQLException, IOException {
+    return copyManager().copyOut(EXPORT_SQL, out);
+  }
+
+  // Header line naming the columns (see IMPORT_COLUMNS; created_at may be empty), then rows.
+  // All or nothing: a bad row rolls back the whole import.
+  @Transactional(rollbackFor = Exception.class)
+  public long importCsv(InputStream in) throws SQLException, IOException {
+    InputStream body = new BufferedInputStream(in);
+    List<String> columns = importColumns(readLine(body));
+    CopyManager copy = copyManager();
+    Connection connection = DataSourceUtils.getConnection(dataSource);
+    try (Statement statement = connection.createStatement()) {
+      statement.execute(IMPORT_TABLE_SQL);
+      // The header is already consumed
+      copy.copyIn("COPY items_import (" + String.join(", ", columns) + ") FROM STDIN WITH (FORMAT csv)", body);
+      return statement.executeUpdate(IMPORT_INSERT_SQL);
+    }
+  }
+
+  // Column names from the header line; only known names, so they are safe to put in the COPY
+  static List<String> importColumns(String header) {
+    if (header == null || header.isBlank()) {
+      throw new IllegalArgumentException("CSV header line is missing");
+    }
+    List<String> columns = new ArrayList<>();
+    for (String column : header.split(",", -1)) {
+      String name = column.trim().replace("\"", "").toLowerCase(Locale.ROOT);
+      if (!IMPORT_COLUMNS.contains(name) || columns.contains(name)) {
+        throw new IllegalArgumentException("Unexpected CSV column '" + column.trim() + "'; allowed: " + IMPORT_COLUMNS);
+      }
+      columns.add(name);
+    }
+    if (!columns.contains("name")) {
+      throw new IllegalArgumentException("CSV header must include name");
+    }
+    return columns;
+  }
+
+  // One line, without the line break; null at the end of the stream
+  private static String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) >= 0 && b != '\n') {
+      line.write(b);
+    }
+    if (b < 0 && line.size() == 0) {
+      return null;
+    }
+    return line.toString(StandardCharsets.UTF_8).strip();
+  }
+
+  // COPY needs the PostgreSQL driver underneath (not H2)
+  public boolean supported() {
+    Boolean result = supported;
+    if (result == null) {
+      try {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+          result = connection.isWrapperFor(PGConnection.class);
+        } finally {
+          DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+      } catch (SQLException e) {
+        return false;
+      }
+      supported = result;
+    }
+    return result;
+  }
+
+  // The transaction's connection, unwrapped down to the PostgreSQL driver
+  private CopyManager copyManager() throws SQLException {
+    return DataSourceUtils.getConnection(dataSource).unwrap(PGConnection.class).getCopyAPI();
+  }
+}
@@ -0,0 +1,31 @@
+package com.example.lab09;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+// Opaque keyset cursor: the (created_at, id) of the last item on a page
+public record ItemCursor(LocalDateTime createdAt, Long id) {
+
+  public static ItemCursor of(Item item) {
+    return new ItemCursor(item.getCreatedAt(), item.getId());
+  }
+
+  public static ItemCursor decode(String cursor) {
+    try {
+      String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      int separator = raw.lastIndexOf('|');
+      return new ItemCursor(
+        LocalDateTime.parse(raw.substring(0, separator)),
+        Long.parseLong(raw.substring(separator + 1))
+      );
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+    }
+  }
+
+  public String encode() {
+    String raw = createdAt + "|" + id;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+}
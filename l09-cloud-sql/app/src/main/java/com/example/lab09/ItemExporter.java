@@ -0,0 +1,55 @@
+package com.example.lab09;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.stream.Stream;
+
+// Writes every item as NDJSON straight from a JDBC cursor.
+// Each entity is detached once written, so the persistence context (and heap)
+// stays the same size however many rows the table has.
+@Component
+@Profile("!reactive")
+public class ItemExporter {
+
+  @Autowired
+  private ItemRepository itemRepository;
+
+  @Autowired
+  private EntityManager entityManager;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  // The transaction keeps the connection (and the PostgreSQL cursor) open while streaming
+  @Transactional(readOnly = true)
+  public long export(OutputStream out) throws IOException {
+    // Rows loaded from the stream are put into the second-level cache according to the
+    // session's cache mode, not the query's, so the streamAll hint alone doesn't keep them out
+    entityManager.unwrap(Session.class).setCacheMode(CacheMode.IGNORE);
+    long written = 0;
+    try (JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+         Stream<Item> items = itemRepository.streamAll()) {
+      json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      for (Item item : (Iterable<Item>) items::iterator) {
+        objectMapper.writeValue(json, item);
+        json.writeRaw('\n');
+        entityManager.detach(item);
+        written++;
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return written;
+  }
+}
@@ -0,0 +1,67 @@
+package com.example.lab09;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Conditional partial update in one statement: UPDATE ... WHERE id = ? AND version = ?.
+// Plain JDBC rather than a JPQL bulk update, which would make Hibernate drop the whole
+// "items" cache region; here only the updated item is evicted. This bypasses Hibernate's
+// READ_WRITE soft lock, so the item is evicted both before the UPDATE and after the commit:
+// a reader that loaded the old row while the update was in flight can't leave it cached.
+@Component
+@Profile("!reactive")
+public class ItemPatcher {
+
+  public enum Outcome { UPDATED, CONFLICT, NOT_FOUND }
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private ItemRepository itemRepository;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  // Only "name" and "description" keys present in the patch are changed
+  @Transactional
+  public Outcome patch(Long id, long version, Map<String, Object> patch) {
+    StringBuilder sql = new StringBuilder("UPDATE items SET version = version + 1");
+    List<Object> args = new ArrayList<>();
+    if (patch.containsKey("name")) {
+      sql.append(", name = ?");
+      args.add(patch.get("name"));
+    }
+    if (patch.containsKey("description")) {
+      sql.append(", description = ?");
+      args.add(patch.get("description"));
+    }
+    sql.append(" WHERE id = ? AND version = ?");
+    args.add(id);
+    args.add(version);
+
+    entityManagerFactory.getCache().evict(Item.class, id);
+    int updated = jdbcTemplate.update(sql.toString(), args.toArray());
+    if (updated == 1) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          entityManagerFactory.getCache().evict(Item.class, id);
+        }
+      });
+      return Outcome.UPDATED;
+    }
+    // Second query only on the failure path, to tell a stale version from a missing item
+    return itemRepository.existsById(id) ? Outcome.CONFLICT : Outcome.NOT_FOUND;
+  }
+}
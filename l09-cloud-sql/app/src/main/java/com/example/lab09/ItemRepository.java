@@ -1,9 +1,54 @@
 package com.example.lab09;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+// Query methods declared here are read-only (routed to a replica); save/delete keep
+// SimpleJpaRepository's read-write transactions
 @Repository
+@Transactional(readOnly = true)
 public interface ItemRepository extends JpaRepository<Item, Long> {
   // JpaRepository provides: save, findById, findAll, deleteById, etc.
+
+  // No transaction: a second-level cache hit is served without borrowing a pool
+  // connection (a read-only transaction would grab one up front to mark it read-only).
+  // readOnly still routes a cache miss to a replica.
+  @Override
+  @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+  Optional<Item> findById(Long id);
+
+  // Keyset pagination on (created_at, id): first page, then everything after a cursor.
+  // Uses idx_items_created_at_id, so each page costs the same no matter how deep it is.
+  List<Item> findAllByOrderByCreatedAtAscIdAsc(Limit limit);
+
+  @Query("SELECT i FROM Item i"
+    + " WHERE i.createdAt > :createdAt OR (i.createdAt = :createdAt AND i.id > :id)"
+    + " ORDER BY i.createdAt, i.id")
+  List<Item> findPageAfter(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Limit limit);
+
+  // Export: rows come from a server-side cursor in batches of the fetch size instead of
+  // one big result set; read-only entities skip dirty-checking snapshots. Cache mode IGNORE
+  // keeps a full scan out of the "items" second-level cache region (callers also set it on
+  // the session, see ItemExporter). Must be consumed inside a (read-only) transaction.
+  @QueryHints({
+    @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+    @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+    @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false"),
+    @QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE")
+  })
+  @Query("SELECT i FROM Item i ORDER BY i.createdAt, i.id")
+  Stream<Item> streamAll();
 }
@@ -0,0 +1,91 @@
+package com.example.lab09;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Full-text search over name + description.
+// PostgreSQL: websearch_to_tsquery against a tsvector of both columns, ranked by ts_rank.
+// The GIN expression index on that tsvector is created once by db/migration/items_search_index.sql,
+// not by the app; until it exists the same query works, just without the index.
+// Other databases (H2 in tests): case-insensitive LIKE on both columns, unranked.
+@Component
+@Profile("!reactive")
+public class ItemSearch {
+
+  // 'simple' config: no language-specific stemming, item names are mostly product terms.
+  // Must stay the same expression as idx_items_search_text for the planner to use the index.
+  private static final String DOCUMENT =
+    "to_tsvector('simple', coalesce(i.name, '') || ' ' || coalesce(i.description, ''))";
+
+  // Package-private so tests can EXPLAIN it
+  static final String POSTGRES_QUERY =
+    "SELECT i.id, i.name, i.description, i.created_at, ts_rank(" + DOCUMENT + ", q) AS rank"
+      + " FROM items i, websearch_to_tsquery('simple', ?) q"
+      + " WHERE " + DOCUMENT + " @@ q"
+      + " ORDER BY rank DESC, i.id"
+      + " LIMIT ? OFFSET ?";
+
+  private static final String FALLBACK_QUERY =
+    "SELECT i.id, i.name, i.description, i.created_at, 1.0 AS rank"
+      + " FROM items i"
+      + " WHERE LOWER(i.name) LIKE ? OR LOWER(i.description) LIKE ?"
+      + " ORDER BY i.id"
+      + " LIMIT ? OFFSET ?";
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  private final TransactionTemplate readOnly;
+
+  private volatile boolean postgres;
+
+  public ItemSearch(PlatformTransactionManager transactionManager) {
+    this.readOnly = new TransactionTemplate(transactionManager);
+    this.readOnly.setReadOnly(true);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void detectDatabase() {
+    postgres = "PostgreSQL".equals(
+      jdbcTemplate.execute((Connection connection) -> connection.getMetaData().getDatabaseProductName()));
+  }
+
+  public List<Map<String, Object>> search(String query, int limit, int offset) {
+    return readOnly.execute(status -> {
+      if (postgres) {
+        return jdbcTemplate.query(POSTGRES_QUERY, (rs, row) -> hit(rs), query, limit, offset);
+      }
+      String pattern = "%" + query.toLowerCase(Locale.ROOT).replace("%", "\\%").replace("_", "\\_") + "%";
+      return jdbcTemplate.query(FALLBACK_QUERY, (rs, row) -> hit(rs), pattern, pattern, limit, offset);
+    });
+  }
+
+  public boolean ranked() {
+    return postgres;
+  }
+
+  private static Map<String, Object> hit(ResultSet rs) throws SQLException {
+    Map<String, Object> hit = new LinkedHashMap<>();
+    hit.put("id", rs.getLong("id"));
+    hit.put("name", rs.getString("name"));
+    hit.put("description", rs.getString("description"));
+    hit.put("createdAt", rs.getObject("created_at", LocalDateTime.class));
+    hit.put("rank", rs.getDouble("rank"));
+    return hit;
+  }
+}
@@ -2,8 +2,10 @@ package com.example.lab09;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class Lab09Application {
   public static void main(String[] args) {
     SpringApplication.run(Lab09Application.class, args);
@@ -0,0 +1,139 @@
+package com.example.lab09;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ValidationDepth;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Same CRUD contract as ItemController on WebFlux + R2DBC ("reactive" profile). A request
+// waiting for a pooled connection holds no thread, so concurrency isn't capped by a
+// thread pool in front of a 5-connection pool. Bulk, search, export/import and PATCH stay
+// on the default (servlet) profile, and no JDBC pool or Hibernate is started here.
+@RestController
+@Profile("reactive")
+public class ReactiveItemController {
+
+  private static final int MAX_PAGE_SIZE = 1000;
+
+  private final ReactiveItemStore itemStore;
+  private final Mono<Map<String, Object>> itemCount;
+  private final Mono<Map<String, Object>> health;
+
+  public ReactiveItemController(ReactiveItemStore itemStore,
+                                ConnectionFactory connectionFactory,
+                                @Value("${db.stats.refresh-interval-ms}") long statsRefreshMillis,
+                                @Value("${db.health.cache-for}") Duration cacheFor,
+                                @Value("${db.health.validation-timeout}") Duration validationTimeout) {
+    this.itemStore = itemStore;
+    // Counted at most once per refresh interval, like DatabaseStats; a failed count is not cached
+    this.itemCount = itemStore.countItems()
+      .cache(counted -> Duration.ofMillis(statsRefreshMillis), error -> Duration.ZERO, () -> Duration.ZERO);
+    // One validation per cache-for interval, shared by concurrent probes
+    this.health = Mono.usingWhen(connectionFactory.create(),
+        connection -> Mono.from(connection.validate(ValidationDepth.REMOTE)),
+        Connection::close)
+      .timeout(validationTimeout)
+      .map(valid -> healthBody(valid, valid ? null : "connection is not valid"))
+      .onErrorResume(e -> Mono.just(healthBody(false, e.getMessage())))
+      .cache(cacheFor);
+  }
+
+  @GetMapping("/")
+  public Mono<Map<String, Object>> root() {
+    return itemCount.onErrorResume(e -> Mono.just(Map.of())).map(count -> {
+      Map<String, Object> root = new LinkedHashMap<>();
+      root.put("service", "lab09-cloud-sql");
+      root.put("description", "Cloud Run + Cloud SQL PostgreSQL (reactive)");
+      root.putAll(count);
+      return root;
+    });
+  }
+
+  @GetMapping("/health")
+  public Mono<ResponseEntity<Map<String, Object>>> health() {
+    return health.map(body -> ResponseEntity
+      .status(Boolean.TRUE.equals(body.get("healthy")) ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE)
+      .body(body));
+  }
+
+  // CREATE
+  @PostMapping("/items")
+  public Mono<ResponseEntity<Item>> createItem(@RequestBody Item item) {
+    return itemStore.create(item).map(saved -> ResponseEntity.status(HttpStatus.CREATED).body(saved));
+  }
+
+  // READ ALL - one keyset page, Next-Cursor header as in ItemController
+  @GetMapping("/items")
+  public Mono<ResponseEntity<?>> getAllItems(
+    @RequestParam(defaultValue = "100") int limit,
+    @RequestParam(required = false) String after) {
+
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      return Mono.just(ResponseEntity.badRequest().body(Map.of("error", "limit must be between 1 and " + MAX_PAGE_SIZE)));
+    }
+    ItemCursor cursor = null;
+    if (after != null) {
+      try {
+        cursor = ItemCursor.decode(after);
+      } catch (IllegalArgumentException e) {
+        return Mono.just(ResponseEntity.badRequest().body(Map.of("error", e.getMessage())));
+      }
+    }
+
+    return itemStore.findPage(cursor, limit).collectList().map(page -> {
+      ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+      if (page.size() == limit) {
+        response.header("Next-Cursor", ItemCursor.of(page.get(page.size() - 1)).encode());
+      }
+      return response.body((List<Item>) page);
+    });
+  }
+
+  // READ ONE - ETag is the version, as in ItemController
+  @GetMapping("/items/{id}")
+  public Mono<ResponseEntity<Item>> getItem(@PathVariable Long id) {
+    return itemStore.findById(id)
+      .map(item -> ResponseEntity.ok().eTag(String.valueOf(item.getVersion())).body(item))
+      .defaultIfEmpty(ResponseEntity.notFound().build());
+  }
+
+  // UPDATE
+  @PutMapping("/items/{id}")
+  public Mono<ResponseEntity<Item>> updateItem(@PathVariable Long id, @RequestBody Item updatedItem) {
+    return itemStore.update(id, updatedItem)
+      .map(ResponseEntity::ok)
+      .defaultIfEmpty(ResponseEntity.notFound().build());
+  }
+
+  // DELETE
+  @DeleteMapping("/items/{id}")
+  public Mono<ResponseEntity<Void>> deleteItem(@PathVariable Long id) {
+    return itemStore.delete(id)
+      .map(deleted -> deleted
+        ? ResponseEntity.noContent().<Void>build()
+        : ResponseEntity.notFound().<Void>build());
+  }
+
+  private static Map<String, Object> healthBody(boolean healthy, String error) {
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("healthy", healthy);
+    body.put("status", healthy ? "UP" : "DOWN");
+    body.put("database", healthy ? "connected" : "disconnected");
+    body.put("checked_at", Instant.now().toString());
+    if (error != null) {
+      body.put("error", error);
+    }
+    return body;
+  }
+}
@@ -0,0 +1,118 @@
+package com.example.lab09;
+
+import io.r2dbc.spi.Readable;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.Parameter;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// Item CRUD over R2DBC for the "reactive" profile: one SQL statement per operation, on the
+// same items table and items_seq sequence as the JPA entity. Writes here bypass Hibernate's
+// second-level cache, which nothing reads in this profile.
+@Component
+@Profile("reactive")
+public class ReactiveItemStore {
+
+  private static final String COLUMNS = "id, name, description, created_at, version";
+
+  private final DatabaseClient client;
+
+  public ReactiveItemStore(DatabaseClient client) {
+    this.client = client;
+  }
+
+  // Ids come straight from items_seq; each nextval is the top of a 50-id block Hibernate
+  // never hands out, so rows created here and through JPA cannot collide
+  public Mono<Item> create(Item item) {
+    return client.sql("INSERT INTO items (" + COLUMNS + ")"
+        + " VALUES (nextval('items_seq'), :name, :description, :createdAt, 0)"
+        + " RETURNING " + COLUMNS)
+      .bind("name", item.getName())
+      .bind("description", Parameter.fromOrEmpty(item.getDescription(), String.class))
+      .bind("createdAt", Parameter.fromOrEmpty(item.getCreatedAt(), LocalDateTime.class))
+      .map(ReactiveItemStore::toItem)
+      .one();
+  }
+
+  public Mono<Item> findById(Long id) {
+    return client.sql("SELECT " + COLUMNS + " FROM items WHERE id = :id")
+      .bind("id", id)
+      .map(ReactiveItemStore::toItem)
+      .one();
+  }
+
+  // Same keyset pagination as ItemRepository, on idx_items_created_at_id
+  public Flux<Item> findPage(ItemCursor after, int limit) {
+    if (after == null) {
+      return client.sql("SELECT " + COLUMNS + " FROM items ORDER BY created_at, id LIMIT :limit")
+        .bind("limit", limit)
+        .map(ReactiveItemStore::toItem)
+        .all();
+    }
+    return client.sql("SELECT " + COLUMNS + " FROM items"
+        + " WHERE created_at > :createdAt OR (created_at = :createdAt AND id > :id)"
+        + " ORDER BY created_at, id LIMIT :limit")
+      .bind("createdAt", after.createdAt())
+      .bind("id", after.id())
+      .bind("limit", limit)
+      .map(ReactiveItemStore::toItem)
+      .all();
+  }
+
+  // Empty when there is no such item; bumps the version like a JPA update would
+  public Mono<Item> update(Long id, Item item) {
+    return client.sql("UPDATE items SET name = :name, description = :description, version = version + 1"
+        + " WHERE id = :id RETURNING " + COLUMNS)
+      .bind("name", item.getName())
+      .bind("description", Parameter.fromOrEmpty(item.getDescription(), String.class))
+      .bind("id", id)
+      .map(ReactiveItemStore::toItem)
+      .one();
+  }
+
+  // Planner estimate when PostgreSQL has a positive one, COUNT(*) otherwise (as DatabaseStats)
+  public Mono<Map<String, Object>> countItems() {
+    return client.sql(DatabaseStats.ESTIMATE_SQL)
+      .map(row -> Optional.ofNullable(row.get(0, Long.class)))
+      .one()
+      .flatMap(Mono::justOrEmpty)
+      .filter(estimate -> estimate > 0)
+      .map(estimate -> count(estimate, true))
+      .switchIfEmpty(Mono.defer(() -> client.sql("SELECT COUNT(*) FROM items")
+        .map(row -> row.get(0, Long.class))
+        .one()
+        .map(exact -> count(exact, false))));
+  }
+
+  public Mono<Boolean> delete(Long id) {
+    return client.sql("DELETE FROM items WHERE id = :id")
+      .bind("id", id)
+      .fetch()
+      .rowsUpdated()
+      .map(rows -> rows > 0);
+  }
+
+  private static Map<String, Object> count(long items, boolean estimated) {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("items_in_db", items);
+    stats.put("items_in_db_estimated", estimated);
+    stats.put("items_in_db_as_of", Instant.now().toString());
+    return stats;
+  }
+
+  private static Item toItem(Readable row) {
+    Item item = new Item(row.get("name", String.class), row.get("description", String.class));
+    item.setId(row.get("id", Long.class));
+    item.setCreatedAt(row.get("created_at", LocalDateTime.class));
+    item.setVersion(row.get("version", Long.class));
+    return item;
+  }
+}
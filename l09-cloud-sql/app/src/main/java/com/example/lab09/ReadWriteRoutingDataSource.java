@@ -0,0 +1,164 @@
+package com.example.lab09;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Sends read-only transactions to a replica pool and everything else to the primary.
+// Must sit behind a LazyConnectionDataSourceProxy: the read-only flag of a transaction is
+// only known once it has begun, after the transaction manager asked for a connection.
+// Requests pinned to the primary (read-your-writes, see ReplicaStickinessFilter) skip
+// replicas, and a replica that fails to hand out a connection is skipped for a while.
+public class ReadWriteRoutingDataSource extends AbstractDataSource implements DisposableBean {
+
+  public enum Strategy { ROUND_ROBIN, LEAST_CONNECTIONS }
+
+  private static final ThreadLocal<Boolean> PRIMARY_ONLY = ThreadLocal.withInitial(() -> false);
+
+  private final HikariDataSource primary;
+  private final List<HikariDataSource> replicas;
+  private final Strategy strategy;
+  private final Duration downFor;
+
+  private final AtomicInteger next = new AtomicInteger();
+  private final AtomicLongArray downUntil;
+  private final AtomicLongArray replicaConnections;
+  private final AtomicLong primaryConnections = new AtomicLong();
+
+  public ReadWriteRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas,
+                                    Strategy strategy, Duration downFor) {
+    this.primary = primary;
+    this.replicas = List.copyOf(replicas);
+    this.strategy = strategy;
+    this.downFor = downFor;
+    this.downUntil = new AtomicLongArray(replicas.size());
+    this.replicaConnections = new AtomicLongArray(replicas.size());
+  }
+
+  // Pins reads on the current thread to the primary (true) or lets them use replicas (false).
+  // The pin is per thread: work handed to another thread has to carry it over.
+  public static void primaryOnly(boolean value) {
+    if (value) {
+      PRIMARY_ONLY.set(true);
+    } else {
+      PRIMARY_ONLY.remove();
+    }
+  }
+
+  public static boolean isPrimaryOnly() {
+    return PRIMARY_ONLY.get();
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return route(HikariDataSource::getConnection);
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    return route(pool -> pool.getConnection(username, password));
+  }
+
+  private Connection route(ConnectionSource source) throws SQLException {
+    boolean readOnly = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    int replica = readOnly && !PRIMARY_ONLY.get() ? pickReplica() : -1;
+    if (replica >= 0) {
+      try {
+        Connection connection = source.connect(replicas.get(replica));
+        replicaConnections.incrementAndGet(replica);
+        return connection;
+      } catch (SQLException e) {
+        // Replica unreachable or exhausted: fall back to the primary and leave it alone for a while
+        downUntil.set(replica, System.currentTimeMillis() + downFor.toMillis());
+      }
+    }
+    Connection connection = source.connect(primary);
+    primaryConnections.incrementAndGet();
+    return connection;
+  }
+
+  public List<Map<String, Object>> pools() {
+    List<Map<String, Object>> pools = new ArrayList<>();
+    pools.add(pool(primary, "primary", true, primaryConnections.get()));
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < replicas.size(); i++) {
+      pools.add(pool(replicas.get(i), "replica", downUntil.get(i) <= now, replicaConnections.get(i)));
+    }
+    return pools;
+  }
+
+  public List<HikariDataSource> targets() {
+    List<HikariDataSource> targets = new ArrayList<>();
+    targets.add(primary);
+    targets.addAll(replicas);
+    return targets;
+  }
+
+  @Override
+  public void destroy() {
+    // The primary is a bean of its own; replicas are only owned here
+    replicas.forEach(HikariDataSource::close);
+  }
+
+  private int pickReplica() {
+    long now = System.currentTimeMillis();
+    int size = replicas.size();
+    if (strategy == Strategy.LEAST_CONNECTIONS) {
+      int best = -1;
+      int bestActive = Integer.MAX_VALUE;
+      for (int i = 0; i < size; i++) {
+        int active = activeConnections(replicas.get(i));
+        if (downUntil.get(i) <= now && active < bestActive) {
+          best = i;
+          bestActive = active;
+        }
+      }
+      return best;
+    }
+    int start = Math.floorMod(next.getAndIncrement(), Math.max(size, 1));
+    for (int i = 0; i < size; i++) {
+      int candidate = (start + i) % size;
+      if (downUntil.get(candidate) <= now) {
+        return candidate;
+      }
+    }
+    return -1;
+  }
+
+  @FunctionalInterface
+  private interface ConnectionSource {
+    Connection connect(HikariDataSource pool) throws SQLException;
+  }
+
+  private static int activeConnections(HikariDataSource pool) {
+    HikariPoolMXBean bean = pool.getHikariPoolMXBean();
+    return bean == null ? 0 : bean.getActiveConnections();
+  }
+
+  private static Map<String, Object> pool(HikariDataSource pool, String role, boolean up, long connections) {
+    HikariPoolMXBean bean = pool.getHikariPoolMXBean();
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("name", pool.getPoolName());
+    stats.put("role", role);
+    stats.put("up", up && !pool.isClosed());
+    stats.put("maxSize", pool.getMaximumPoolSize());
+    stats.put("active", bean == null ? 0 : bean.getActiveConnections());
+    stats.put("idle", bean == null ? 0 : bean.getIdleConnections());
+    stats.put("waiting", bean == null ? 0 : bean.getThreadsAwaitingConnection());
+    stats.put("connectionsServed", connections);
+    return stats;
+  }
+}
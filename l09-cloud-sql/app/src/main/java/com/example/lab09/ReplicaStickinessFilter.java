@@ -0,0 +1,71 @@
+package com.example.lab09;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+
+// Read-your-writes: a client that just wrote gets a cookie pinning its reads to the
+// primary for db.replica.max-lag, so it never reads from a replica that hasn't caught up.
+// A cookie (not instance memory) so it works across Cloud Run instances.
+@Component
+@Profile("!reactive")
+public class ReplicaStickinessFilter extends OncePerRequestFilter {
+
+  static final String COOKIE = "db-primary-until";
+  private static final Set<String> WRITE_METHODS = Set.of("POST", "PUT", "PATCH", "DELETE");
+
+  private final Duration maxLag;
+
+  public ReplicaStickinessFilter(@Value("${db.replica.max-lag}") Duration maxLag) {
+    this.maxLag = maxLag;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+    throws ServletException, IOException {
+
+    long now = System.currentTimeMillis();
+    boolean write = WRITE_METHODS.contains(request.getMethod());
+    if (write) {
+      // Set before the body is written; harmless if the write fails
+      Cookie cookie = new Cookie(COOKIE, Long.toString(now + maxLag.toMillis()));
+      cookie.setPath("/");
+      cookie.setHttpOnly(true);
+      cookie.setMaxAge((int) Math.max(1, maxLag.toSeconds()));
+      response.addCookie(cookie);
+    }
+
+    ReadWriteRoutingDataSource.primaryOnly(write || pinned(request, now));
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      ReadWriteRoutingDataSource.primaryOnly(false);
+    }
+  }
+
+  private static boolean pinned(HttpServletRequest request, long now) {
+    if (request.getCookies() == null) {
+      return false;
+    }
+    for (Cookie cookie : request.getCookies()) {
+      if (COOKIE.equals(cookie.getName())) {
+        try {
+          return Long.parseLong(cookie.getValue()) > now;
+        } catch (NumberFormatException e) {
+          return false;
+        }
+      }
+    }
+    return false;
+  }
+}
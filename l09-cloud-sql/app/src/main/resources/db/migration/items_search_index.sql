@@ -0,0 +1,17 @@
+-- Full-text search index for /items/search. Run once per database as a deploy step, not
+-- from the app, and outside a transaction (psql's default autocommit):
+--   psql "$DATABASE_URL" -f items_search_index.sql
+--
+-- CONCURRENTLY builds the index without blocking writes to items. If the build fails it
+-- leaves an INVALID index behind: DROP INDEX CONCURRENTLY idx_items_search_text and rerun.
+-- The expression must match ItemSearch.DOCUMENT.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_items_search_text
+  ON items USING GIN (to_tsvector('simple', coalesce(name, '') || ' ' || coalesce(description, '')));
+
+-- Earlier versions added a generated search_vector column and its index at startup.
+-- Dropping a column only updates the catalog (no table rewrite); lock_timeout keeps it from
+-- queueing behind long transactions and blocking everything else.
+DROP INDEX CONCURRENTLY IF EXISTS idx_items_search;
+SET lock_timeout = '5s';
+ALTER TABLE items DROP COLUMN IF EXISTS search_vector;
+RESET lock_timeout;
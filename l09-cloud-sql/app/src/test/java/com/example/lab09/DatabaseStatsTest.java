@@ -0,0 +1,70 @@
+package com.example.lab09;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against a real PostgreSQL (embedded binary): the planner estimate comes from pg_class
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class DatabaseStatsTest {
+
+  // Stopped by its own shutdown hook when the test JVM exits
+  private static final EmbeddedPostgres postgres = start();
+
+  @Autowired
+  private TestRestTemplate restTemplate;
+
+  @Autowired
+  private ItemRepository itemRepository;
+
+  @Autowired
+  private DatabaseStats databaseStats;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @DynamicPropertySource
+  static void datasource(DynamicPropertyRegistry registry) {
+    registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+    registry.add("spring.datasource.username", () -> "postgres");
+    registry.add("spring.datasource.password", () -> "");
+    // "create", not "create-drop": the throwaway database may be gone before the context closes
+    registry.add("spring.jpa.hibernate.ddl-auto", () -> "create");
+  }
+
+  @Test
+  void unknownPlannerEstimateFallsBackToCount() {
+    restTemplate.postForEntity("/items", new Item("Counted", null), Item.class);
+
+    // What pg_class reports for a table that was never analyzed
+    jdbcTemplate.update("UPDATE pg_class SET reltuples = -1 WHERE oid = to_regclass('items')");
+    databaseStats.refresh();
+    Map<String, Object> exact = databaseStats.snapshot();
+    assertEquals(false, exact.get("items_in_db_estimated"));
+    assertEquals(itemRepository.count(), exact.get("items_in_db"));
+
+    jdbcTemplate.execute("ANALYZE items");
+    databaseStats.refresh();
+    Map<String, Object> estimate = databaseStats.snapshot();
+    assertEquals(true, estimate.get("items_in_db_estimated"));
+    assertTrue((Long) estimate.get("items_in_db") > 0);
+  }
+
+  private static EmbeddedPostgres start() {
+    try {
+      return EmbeddedPostgres.start();
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not start embedded PostgreSQL", e);
+    }
+  }
+}
@@ -1,14 +1,40 @@
 package com.example.lab09;
 
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
 import org.springframework.test.context.TestPropertySource;
+import com.zaxxer.hikari.HikariDataSource;
 
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -19,6 +45,17 @@ class ItemControllerTest {
   @Autowired
   private TestRestTemplate restTemplate;
 
+  @Autowired
+  private ReadWriteRoutingDataSource routingDataSource;
+
+  @Autowired
+  private ItemRepository itemRepository;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  private TestRestTemplate patchClient;
+
   @Test
   void rootEndpointReturnsServiceInfo() {
     ResponseEntity<Map> response = restTemplate.getForEntity("/", Map.class);
@@ -50,4 +87,353 @@ class ItemControllerTest {
     assertEquals(HttpStatus.OK, getAllResponse.getStatusCode());
     assertTrue(getAllResponse.getBody().length > 0);
   }
+
+  @Test
+  void keysetPaginationVisitsEveryItemOnce() {
+    // Start just before our items so the walk doesn't depend on what other tests inserted
+    String cursor = new ItemCursor(LocalDateTime.now().minusSeconds(1), 0L).encode();
+    Set<Long> created = new HashSet<>();
+    for (int i = 0; i < 25; i++) {
+      created.add(restTemplate.postForEntity("/items", new Item("Page " + i, null), Item.class).getBody().getId());
+    }
+
+    List<Long> seen = new ArrayList<>();
+    do {
+      String url = "/items?limit=7&after=" + cursor;
+      ResponseEntity<Item[]> page = restTemplate.getForEntity(url, Item[].class);
+      assertEquals(HttpStatus.OK, page.getStatusCode());
+      assertTrue(page.getBody().length <= 7);
+      for (Item item : page.getBody()) {
+        seen.add(item.getId());
+      }
+      cursor = page.getHeaders().getFirst("Next-Cursor");
+    } while (cursor != null);
+
+    assertEquals(seen.size(), new HashSet<>(seen).size(), "no item should appear twice");
+    assertTrue(seen.containsAll(created));
+  }
+
+  @Test
+  void invalidCursorIsRejected() {
+    ResponseEntity<Map> response = restTemplate.getForEntity("/items?after=not-a-cursor", Map.class);
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    assertNotNull(response.getBody().get("error"));
+  }
+
+  @Test
+  void csvCopyNeedsPostgres() {
+    assertEquals(HttpStatus.NOT_IMPLEMENTED, restTemplate.getForEntity("/items/export?format=csv", String.class).getStatusCode());
+  }
+
+  @Test
+  void exportStreamsNdjson() {
+    restTemplate.postForEntity("/items", new Item("Exported", "ndjson"), Item.class);
+
+    ResponseEntity<String> response = restTemplate.getForEntity("/items/export", String.class);
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals("application/x-ndjson", response.getHeaders().getContentType().toString());
+
+    String[] lines = response.getBody().split("\n");
+    long count = itemRepository.count();
+    assertEquals(count, lines.length);
+    assertTrue(response.getBody().contains("\"name\":\"Exported\""));
+  }
+
+  @Test
+  void exportBypassesSecondLevelCache() {
+    restTemplate.postForEntity("/items", new Item("Not cached", "export"), Item.class);
+    entityManagerFactory.getCache().evictAll();
+    Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+    long putsBefore = statistics.getSecondLevelCachePutCount();
+    assertEquals(HttpStatus.OK, restTemplate.getForEntity("/items/export", String.class).getStatusCode());
+    assertEquals(putsBefore, statistics.getSecondLevelCachePutCount());
+  }
+
+  @Test
+  void bulkInsertRejectsItemWithoutName() {
+    List<Item> items = List.of(new Item("ok", null), new Item(null, "missing name"));
+    ResponseEntity<Map> response = restTemplate.postForEntity("/items/bulk", items, Map.class);
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    assertTrue(((String) response.getBody().get("error")).contains("index 1"));
+  }
+
+  @Test
+  void bulkInsertIsFasterThanSingleInserts() {
+    int single = 300;
+    long start = System.nanoTime();
+    for (int i = 0; i < single; i++) {
+      restTemplate.postForEntity("/items", new Item("Single " + i, "one per call"), Item.class);
+    }
+    double singleRate = single / ((System.nanoTime() - start) / 1e9);
+
+    int bulk = 5000;
+    List<Item> items = new ArrayList<>(bulk);
+    for (int i = 0; i < bulk; i++) {
+      items.add(new Item("Bulk " + i, "batched"));
+    }
+    long countBefore = itemRepository.count();
+    start = System.nanoTime();
+    ResponseEntity<Map> response = restTemplate.postForEntity("/items/bulk", items, Map.class);
+    double bulkRate = bulk / ((System.nanoTime() - start) / 1e9);
+
+    assertEquals(HttpStatus.CREATED, response.getStatusCode());
+    assertEquals(bulk, response.getBody().get("inserted"));
+    long countAfter = itemRepository.count();
+    assertEquals(countBefore + bulk, countAfter);
+
+    System.out.printf("single insert: %.0f rows/s, bulk insert: %.0f rows/s (%s chunks)%n",
+      singleRate, bulkRate, response.getBody().get("chunks"));
+    assertTrue(bulkRate > singleRate);
+  }
+
+  @Test
+  void cachedReadDoesNotNeedPoolConnection() throws Exception {
+    Long id = restTemplate.postForEntity("/items", new Item("Cached", "l2"), Item.class).getBody().getId();
+    assertEquals(HttpStatus.OK, restTemplate.getForEntity("/items/" + id, Item.class).getStatusCode());
+
+    // Hold every connection in every pool; a cache hit must still be served
+    List<Connection> held = new ArrayList<>();
+    try {
+      for (HikariDataSource pool : routingDataSource.targets()) {
+        for (int i = 0; i < pool.getMaximumPoolSize(); i++) {
+          held.add(pool.getConnection());
+        }
+      }
+      ResponseEntity<Item> response = restTemplate.getForEntity("/items/" + id, Item.class);
+      assertEquals(HttpStatus.OK, response.getStatusCode());
+      assertEquals("Cached", response.getBody().getName());
+    } finally {
+      for (Connection connection : held) {
+        connection.close();
+      }
+    }
+
+    Map stats = restTemplate.getForObject("/items/cache/stats", Map.class);
+    assertTrue(((Number) stats.get("hits")).longValue() > 0);
+    assertTrue(((Number) stats.get("evictions")).longValue() >= 0);
+  }
+
+  @Test
+  void updateAndDeleteAreVisibleThroughCache() {
+    Long id = restTemplate.postForEntity("/items", new Item("Before", null), Item.class).getBody().getId();
+    restTemplate.getForEntity("/items/" + id, Item.class);
+
+    restTemplate.put("/items/" + id, new Item("After", "updated"));
+    assertEquals("After", restTemplate.getForEntity("/items/" + id, Item.class).getBody().getName());
+
+    restTemplate.delete("/items/" + id);
+    assertEquals(HttpStatus.NOT_FOUND, restTemplate.getForEntity("/items/" + id, Item.class).getStatusCode());
+  }
+
+  @Test
+  void readsGoToReplicaAndWritesToPrimary() {
+    long primaryBefore = served("primary");
+    long replicaBefore = served("replica-0");
+
+    restTemplate.getForEntity("/items?limit=5", Item[].class);
+    assertEquals(primaryBefore, served("primary"));
+    assertTrue(served("replica-0") > replicaBefore);
+
+    ResponseEntity<Item> created = restTemplate.postForEntity("/items", new Item("Routed", null), Item.class);
+    assertTrue(served("primary") > primaryBefore);
+
+    // Read-your-writes: the cookie from the write pins the next read to the primary
+    String cookie = created.getHeaders().getFirst(HttpHeaders.SET_COOKIE);
+    assertNotNull(cookie);
+    HttpHeaders headers = new HttpHeaders();
+    headers.add(HttpHeaders.COOKIE, cookie.split(";")[0]);
+    long replicaAfterWrite = served("replica-0");
+    long primaryAfterWrite = served("primary");
+    restTemplate.exchange("/items?limit=5", HttpMethod.GET, new HttpEntity<>(headers), Item[].class);
+    assertEquals(replicaAfterWrite, served("replica-0"));
+    assertTrue(served("primary") > primaryAfterWrite);
+  }
+
+  @Test
+  void pinnedExportStaysOnPrimary() {
+    ResponseEntity<Item> created = restTemplate.postForEntity("/items", new Item("Pinned export", null), Item.class);
+    HttpHeaders headers = new HttpHeaders();
+    headers.add(HttpHeaders.COOKIE, created.getHeaders().getFirst(HttpHeaders.SET_COOKIE).split(";")[0]);
+
+    long replicaBefore = served("replica-0");
+    long primaryBefore = served("primary");
+    ResponseEntity<String> export = restTemplate.exchange("/items/export", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    assertEquals(HttpStatus.OK, export.getStatusCode());
+    assertTrue(export.getBody().contains("Pinned export"));
+    assertEquals(replicaBefore, served("replica-0"));
+    assertTrue(served("primary") > primaryBefore);
+  }
+
+  private long served(String pool) {
+    List<Map> pools = List.of(restTemplate.getForObject("/db/pools", Map[].class));
+    return pools.stream()
+      .filter(p -> pool.equals(p.get("name")))
+      .mapToLong(p -> ((Number) p.get("connectionsServed")).longValue())
+      .findFirst()
+      .orElseThrow();
+  }
+
+  @Test
+  void healthProbeIsCached() {
+    Map first = restTemplate.getForObject("/health", Map.class);
+    Map second = restTemplate.getForObject("/health", Map.class);
+    assertEquals(true, second.get("healthy"));
+    assertEquals(first.get("checked_at"), second.get("checked_at"));
+  }
+
+  @Test
+  void rootShowsBackgroundItemCount() {
+    Map root = restTemplate.getForObject("/", Map.class);
+    assertTrue(root.containsKey("items_in_db"));
+    assertEquals(false, root.get("items_in_db_estimated"));
+  }
+
+  @Test
+  void searchFindsNameAndDescriptionMatches() {
+    restTemplate.postForEntity("/items", new Item("Turquoise lamp", "desk light"), Item.class);
+    restTemplate.postForEntity("/items", new Item("Chair", "turquoise fabric"), Item.class);
+
+    ResponseEntity<Map> response = restTemplate.getForEntity("/items/search?q=turquoise", Map.class);
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    List<Map<String, Object>> results = (List<Map<String, Object>>) response.getBody().get("results");
+    assertEquals(2, results.size());
+
+    assertEquals(HttpStatus.BAD_REQUEST, restTemplate.getForEntity("/items/search?q= ", Map.class).getStatusCode());
+  }
+
+  @Test
+  void patchWithStaleVersionConflicts() {
+    Long id = restTemplate.postForEntity("/items", new Item("Versioned", "v0"), Item.class).getBody().getId();
+    String etag = restTemplate.getForEntity("/items/" + id, Item.class).getHeaders().getETag();
+
+    ResponseEntity<Map> first = patch(id, etag, Map.of("description", "v1"));
+    assertEquals(HttpStatus.NO_CONTENT, first.getStatusCode());
+    assertNotEquals(etag, first.getHeaders().getETag());
+
+    // Same (now stale) version again: lost update prevented
+    ResponseEntity<Map> second = patch(id, etag, Map.of("description", "v2"));
+    assertEquals(HttpStatus.CONFLICT, second.getStatusCode());
+
+    Item item = restTemplate.getForEntity("/items/" + id, Item.class).getBody();
+    assertEquals("v1", item.getDescription());
+    assertEquals("Versioned", item.getName());
+
+    assertEquals(HttpStatus.PRECONDITION_REQUIRED, patch(id, null, Map.of("name", "x")).getStatusCode());
+    assertEquals(HttpStatus.NOT_FOUND, patch(-1L, "\"0\"", Map.of("name", "x")).getStatusCode());
+  }
+
+  @Test
+  void patchRejectsNonStringFields() {
+    Long id = restTemplate.postForEntity("/items", new Item("Typed", "text"), Item.class).getBody().getId();
+    String etag = restTemplate.getForEntity("/items/" + id, Item.class).getHeaders().getETag();
+
+    assertEquals(HttpStatus.BAD_REQUEST, patch(id, etag, Map.of("description", 5)).getStatusCode());
+    assertEquals(HttpStatus.BAD_REQUEST, patch(id, etag, Map.of("name", List.of("x"))).getStatusCode());
+    Map<String, Object> clear = new HashMap<>();
+    clear.put("description", null);
+    assertEquals(HttpStatus.NO_CONTENT, patch(id, etag, clear).getStatusCode());
+    assertNull(restTemplate.getForEntity("/items/" + id, Item.class).getBody().getDescription());
+  }
+
+  @Test
+  void patchLeavesNoCachedCopy() {
+    Long id = restTemplate.postForEntity("/items", new Item("Cached patch", "old"), Item.class).getBody().getId();
+    String etag = restTemplate.getForEntity("/items/" + id, Item.class).getHeaders().getETag();
+    assertTrue(entityManagerFactory.getCache().contains(Item.class, id));
+
+    assertEquals(HttpStatus.NO_CONTENT, patch(id, etag, Map.of("description", "new")).getStatusCode());
+
+    assertFalse(entityManagerFactory.getCache().contains(Item.class, id));
+    assertEquals("new", restTemplate.getForEntity("/items/" + id, Item.class).getBody().getDescription());
+  }
+
+  @Test
+  void patchIsCheaperThanPut() {
+    int updates = 200;
+    Long id = restTemplate.postForEntity("/items", new Item("Bench", "0"), Item.class).getBody().getId();
+
+    // Cold cache for both: PUT has to read the item first, PATCH doesn't
+    long roundTripsBefore = RoundTripCounter.count.get();
+    long start = System.nanoTime();
+    for (int i = 0; i < updates; i++) {
+      entityManagerFactory.getCache().evict(Item.class, id);
+      restTemplate.put("/items/" + id, new Item("Bench", "put " + i));
+    }
+    double putMillis = (System.nanoTime() - start) / 1e6 / updates;
+    double putRoundTrips = (double) (RoundTripCounter.count.get() - roundTripsBefore) / updates;
+
+    String etag = restTemplate.getForEntity("/items/" + id, Item.class).getHeaders().getETag();
+    roundTripsBefore = RoundTripCounter.count.get();
+    start = System.nanoTime();
+    for (int i = 0; i < updates; i++) {
+      entityManagerFactory.getCache().evict(Item.class, id);
+      ResponseEntity<Map> response = patch(id, etag, Map.of("description", "patch " + i));
+      assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
+      etag = response.getHeaders().getETag();
+    }
+    double patchMillis = (System.nanoTime() - start) / 1e6 / updates;
+    double patchRoundTrips = (double) (RoundTripCounter.count.get() - roundTripsBefore) / updates;
+
+    System.out.printf("PUT: %.2f ms, %.1f round trips per update; PATCH: %.2f ms, %.1f round trips per update%n",
+      putMillis, putRoundTrips, patchMillis, patchRoundTrips);
+    // PATCH: the UPDATE and the commit; PUT: a SELECT on top
+    assertEquals(2.0, patchRoundTrips);
+    assertTrue(putRoundTrips > patchRoundTrips);
+  }
+
+  private ResponseEntity<Map> patch(Long id, String ifMatch, Map<String, Object> body) {
+    // The default JDK HttpURLConnection can't send PATCH
+    if (patchClient == null) {
+      patchClient = new TestRestTemplate(new RestTemplateBuilder()
+        .requestFactory(JdkClientHttpRequestFactory.class)
+        .rootUri(restTemplate.getRootUri()));
+    }
+    HttpHeaders headers = new HttpHeaders();
+    if (ifMatch != null) {
+      headers.setIfMatch(ifMatch);
+    }
+    return patchClient.exchange("/items/" + id, HttpMethod.PATCH, new HttpEntity<>(body, headers), Map.class);
+  }
+
+  // Round trips issued while serving requests: statements prepared plus explicit commits
+  // (an autocommit statement is one round trip). Counted on the JDBC connection, so PUT
+  // (JPA) and PATCH (JdbcTemplate) are measured the same way; background jobs are ignored.
+  @TestConfiguration
+  static class RoundTripCounter {
+
+    static final AtomicLong count = new AtomicLong();
+
+    private static final Set<String> COUNTED = Set.of("prepareStatement", "prepareCall", "createStatement", "commit");
+
+    @Bean
+    static BeanPostProcessor countingDataSource() {
+      return new BeanPostProcessor() {
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+          return "dataSource".equals(beanName) ? new DelegatingDataSource((DataSource) bean) {
+            @Override
+            public Connection getConnection() throws SQLException {
+              return counting(super.getConnection());
+            }
+          } : bean;
+        }
+      };
+    }
+
+    private static Connection counting(Connection connection) {
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+        (proxy, method, args) -> {
+          // Tomcat request threads only, not the scheduled stats refresh
+          if (COUNTED.contains(method.getName()) && Thread.currentThread().getName().contains("-exec-")) {
+            count.incrementAndGet();
+          }
+          try {
+            return method.invoke(connection, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+    }
+  }
 }
@@ -0,0 +1,151 @@
+package com.example.lab09;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against a real PostgreSQL (embedded binary): COPY doesn't exist in H2
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ItemCopyTest {
+
+  // Stopped by its own shutdown hook when the test JVM exits
+  private static final EmbeddedPostgres postgres = start();
+
+  @Autowired
+  private TestRestTemplate restTemplate;
+
+  @Autowired
+  private ItemRepository itemRepository;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @DynamicPropertySource
+  static void datasource(DynamicPropertyRegistry registry) {
+    registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+    registry.add("spring.datasource.username", () -> "postgres");
+    registry.add("spring.datasource.password", () -> "");
+    // "create", not "create-drop": the throwaway database may be gone before the context closes
+    registry.add("spring.jpa.hibernate.ddl-auto", () -> "create");
+  }
+
+  @Test
+  void importThenExportCsv() {
+    int rows = 50_000;
+    StringBuilder csv = new StringBuilder("name,description,created_at\n");
+    for (int i = 0; i < rows; i++) {
+      csv.append("Imported ").append(i).append(",\"row, ").append(i).append("\",\n");
+    }
+    long before = itemRepository.count();
+
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.parseMediaType("text/csv"));
+    long start = System.nanoTime();
+    ResponseEntity<Map> imported = restTemplate.postForEntity(
+      "/items/import", new HttpEntity<>(csv.toString(), headers), Map.class);
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    assertEquals(HttpStatus.CREATED, imported.getStatusCode());
+    assertEquals(rows, ((Number) imported.getBody().get("imported")).intValue());
+    assertEquals(before + rows, itemRepository.count());
+    System.out.printf("COPY import: %d rows in %.2fs (%.0f rows/s)%n", rows, seconds, rows / seconds);
+
+    // Imported rows get ids from the sequence and coexist with JPA inserts
+    assertEquals(HttpStatus.CREATED, restTemplate.postForEntity("/items", new Item("After import", null), Item.class).getStatusCode());
+
+    ResponseEntity<String> exported = restTemplate.getForEntity("/items/export?format=csv", String.class);
+    assertEquals(HttpStatus.OK, exported.getStatusCode());
+    String[] lines = exported.getBody().split("\n");
+    assertEquals("id,name,description,created_at,version", lines[0]);
+    assertEquals(itemRepository.count() + 1, lines.length);
+    assertTrue(exported.getBody().contains("\"row, 42\""));
+  }
+
+  @Test
+  void badCsvImportsNothing() {
+    long before = itemRepository.count();
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.parseMediaType("text/csv"));
+    String csv = "name,description,created_at\nGood,ok,\nBad,ok,not-a-date\n";
+
+    ResponseEntity<Map> response = restTemplate.postForEntity("/items/import", new HttpEntity<>(csv, headers), Map.class);
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    assertEquals(before, itemRepository.count());
+
+    String unknownColumn = "name,price\nGood,3\n";
+    response = restTemplate.postForEntity("/items/import", new HttpEntity<>(unknownColumn, headers), Map.class);
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    assertTrue(response.getBody().get("error").toString().contains("price"));
+    assertEquals(before, itemRepository.count());
+  }
+
+  @Test
+  void exportReimportsWithNewIds() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.parseMediaType("text/csv"));
+    restTemplate.postForEntity("/items", new Item("Round trip", "quoted, \"text\""), Item.class);
+    String exported = restTemplate.getForObject("/items/export?format=csv", String.class);
+    long before = itemRepository.count();
+
+    ResponseEntity<Map> imported = restTemplate.postForEntity("/items/import", new HttpEntity<>(exported, headers), Map.class);
+
+    assertEquals(HttpStatus.CREATED, imported.getStatusCode(), String.valueOf(imported.getBody()));
+    assertEquals(before, ((Number) imported.getBody().get("imported")).longValue());
+    assertEquals(2 * before, itemRepository.count());
+    assertEquals(2, jdbcTemplate.queryForObject(
+      "SELECT count(*) FROM items WHERE name = 'Round trip' AND description = 'quoted, \"text\"'", Integer.class));
+  }
+
+  @Test
+  void importTakesOneSequenceValuePerFiftyRows() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.parseMediaType("text/csv"));
+    StringBuilder csv = new StringBuilder("description,name\n");
+    for (int i = 0; i < 120; i++) {
+      csv.append("block,Blocked ").append(i).append('\n');
+    }
+    // Make sure the sequence is past its first value
+    restTemplate.postForEntity("/items", new Item("Before blocks", null), Item.class);
+    long sequenceBefore = jdbcTemplate.queryForObject("SELECT last_value FROM items_seq", Long.class);
+
+    ResponseEntity<Map> imported = restTemplate.postForEntity("/items/import", new HttpEntity<>(csv.toString(), headers), Map.class);
+
+    assertEquals(HttpStatus.CREATED, imported.getStatusCode());
+    // 120 rows: three blocks of 50 ids
+    assertEquals(sequenceBefore + 3 * 50, jdbcTemplate.queryForObject("SELECT last_value FROM items_seq", Long.class));
+    Map<String, Object> ids = jdbcTemplate.queryForMap(
+      "SELECT count(DISTINCT id) AS distinct_ids, min(id) AS low, max(id) AS high FROM items WHERE name LIKE 'Blocked %'");
+    assertEquals(120L, ((Number) ids.get("distinct_ids")).longValue());
+    assertTrue(((Number) ids.get("low")).longValue() > sequenceBefore);
+    assertTrue(((Number) ids.get("high")).longValue() <= sequenceBefore + 3 * 50);
+
+    // Hibernate's next ids don't collide with the imported ones
+    for (int i = 0; i < 60; i++) {
+      assertEquals(HttpStatus.CREATED,
+        restTemplate.postForEntity("/items", new Item("After blocks " + i, null), Item.class).getStatusCode());
+    }
+  }
+
+  private static EmbeddedPostgres start() {
+    try {
+      return EmbeddedPostgres.start();
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not start embedded PostgreSQL", e);
+    }
+  }
+}
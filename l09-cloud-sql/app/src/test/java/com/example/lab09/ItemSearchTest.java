@@ -0,0 +1,139 @@
+package com.example.lab09;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs against a real PostgreSQL (embedded binary): tsvector search doesn't exist in H2.
+// The search index comes from the migration script, applied here the way a deploy step would.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ItemSearchTest {
+
+  // Stopped by its own shutdown hook when the test JVM exits
+  private static final EmbeddedPostgres postgres = start();
+
+  @Autowired
+  private TestRestTemplate restTemplate;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private ItemBulkLoader itemBulkLoader;
+
+  @DynamicPropertySource
+  static void datasource(DynamicPropertyRegistry registry) {
+    registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+    registry.add("spring.datasource.username", () -> "postgres");
+    registry.add("spring.datasource.password", () -> "");
+    // "create", not "create-drop": the throwaway database may be gone before the context closes
+    registry.add("spring.jpa.hibernate.ddl-auto", () -> "create");
+  }
+
+  @Test
+  void searchIsRankedWithAndWithoutTheIndex() {
+    restTemplate.postForEntity("/items", new Item("Copper kettle", "copper copper"), Item.class);
+    restTemplate.postForEntity("/items", new Item("Steel pan", "copper base"), Item.class);
+    try {
+      jdbcTemplate.execute("DROP INDEX IF EXISTS idx_items_search_text");
+      assertRanked(search("copper"));
+
+      migrate();
+      assertRanked(search("copper"));
+    } finally {
+      jdbcTemplate.update("DELETE FROM items WHERE name IN ('Copper kettle', 'Steel pan')");
+    }
+  }
+
+  @Test
+  void migrationCanBeRerun() {
+    migrate();
+    migrate();
+    assertTrue(indexExists());
+  }
+
+  // Synthetic load: -Dsearch.benchmark.rows=1000000 for the full-size run.
+  // The rows are deleted afterwards so the other tests' counts are unaffected.
+  @Test
+  void searchBenchmarkUsesGinIndex() {
+    int rows = Integer.getInteger("search.benchmark.rows", 20_000);
+    String[] words = {"alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel"};
+    try {
+      migrate();
+      for (int from = 0; from < rows; from += 10_000) {
+        List<Item> chunk = new ArrayList<>();
+        for (int i = from; i < Math.min(from + 10_000, rows); i++) {
+          chunk.add(new Item("Synthetic " + words[i % words.length] + " " + i, "needle" + (i % 1000) + " filler text"));
+        }
+        itemBulkLoader.insert(chunk);
+      }
+      // What autovacuum would do after a bulk load: flush the GIN pending list, refresh stats
+      jdbcTemplate.execute("VACUUM ANALYZE items");
+
+      String plan = String.join("\n", jdbcTemplate.queryForList(
+        "EXPLAIN " + ItemSearch.POSTGRES_QUERY, String.class, "needle42", 50, 0));
+      assertTrue(plan.contains("idx_items_search_text"), plan);
+
+      int queries = 20;
+      long start = System.nanoTime();
+      int found = 0;
+      for (int i = 0; i < queries; i++) {
+        Map body = restTemplate.getForObject("/items/search?q=needle" + (i * 37 % 1000) + "&limit=50", Map.class);
+        assertEquals(true, body.get("ranked"));
+        found += ((List<?>) body.get("results")).size();
+      }
+      double millisPerQuery = (System.nanoTime() - start) / 1e6 / queries;
+
+      assertEquals(queries * (rows / 1000), found);
+      System.out.printf("search: %d rows, %.1f ms/query (tsvector + GIN)%n", rows, millisPerQuery);
+    } finally {
+      jdbcTemplate.update("DELETE FROM items WHERE name LIKE 'Synthetic %'");
+    }
+  }
+
+  private Map search(String query) {
+    return restTemplate.getForObject("/items/search?q=" + query, Map.class);
+  }
+
+  private static void assertRanked(Map body) {
+    assertEquals(true, body.get("ranked"));
+    List<Map<String, Object>> results = (List<Map<String, Object>>) body.get("results");
+    assertEquals(2, results.size());
+    assertEquals("Copper kettle", results.get(0).get("name"));
+  }
+
+  // Autocommit, like psql: CREATE INDEX CONCURRENTLY can't run inside a transaction
+  private void migrate() {
+    jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+      ScriptUtils.executeSqlScript(connection, new ClassPathResource("db/migration/items_search_index.sql"));
+      return null;
+    });
+  }
+
+  private boolean indexExists() {
+    return jdbcTemplate.queryForObject("SELECT to_regclass('idx_items_search_text') IS NOT NULL", Boolean.class);
+  }
+
+  private static EmbeddedPostgres start() {
+    try {
+      return EmbeddedPostgres.start();
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not start embedded PostgreSQL", e);
+    }
+  }
+}
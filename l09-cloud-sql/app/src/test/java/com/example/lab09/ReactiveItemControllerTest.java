@@ -0,0 +1,231 @@
+package com.example.lab09;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The "reactive" profile (WebFlux + R2DBC) against embedded PostgreSQL: same CRUD contract
+// as ItemControllerTest, plus a load comparison with the default JPA stack on the same database.
+// Only compiled and run with mvn -Preactive.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("reactive")
+class ReactiveItemControllerTest {
+
+  // Stopped by its own shutdown hook when the test JVM exits; the reactive profile doesn't
+  // run Hibernate, so the schema is created up front by the default profile
+  private static final EmbeddedPostgres postgres = createSchema(start());
+
+  @Autowired
+  private WebTestClient client;
+
+  @LocalServerPort
+  private int port;
+
+  @Autowired
+  private ApplicationContext context;
+
+  @DynamicPropertySource
+  static void datasource(DynamicPropertyRegistry registry) {
+    registry.add("spring.r2dbc.url", () -> "r2dbc:postgresql://127.0.0.1:" + postgres.getPort() + "/postgres");
+    registry.add("spring.r2dbc.username", () -> "postgres");
+    // Embedded Postgres trusts local connections, but the R2DBC driver needs a password set
+    registry.add("spring.r2dbc.password", () -> "postgres");
+  }
+
+  @Test
+  void health() {
+    client.get().uri("/health").exchange()
+      .expectStatus().isOk()
+      .expectBody().jsonPath("$.status").isEqualTo("UP");
+  }
+
+  @Test
+  void noJdbcOrJpaBeans() {
+    assertEquals(0, context.getBeanNamesForType(DataSource.class).length);
+    assertEquals(0, context.getBeanNamesForType(EntityManagerFactory.class).length);
+  }
+
+  @Test
+  void rootShowsItemCount() {
+    create(new Item("Counted", null));
+    client.get().uri("/").exchange()
+      .expectStatus().isOk()
+      .expectBody()
+      .jsonPath("$.service").isEqualTo("lab09-cloud-sql")
+      .jsonPath("$.items_in_db").isNumber();
+  }
+
+  @Test
+  void crud() {
+    Item created = client.post().uri("/items").bodyValue(new Item("Reactive", "r2dbc")).exchange()
+      .expectStatus().isCreated()
+      .expectBody(Item.class).returnResult().getResponseBody();
+    assertNotNull(created.getId());
+    assertEquals(0L, created.getVersion());
+
+    client.get().uri("/items/" + created.getId()).exchange()
+      .expectStatus().isOk()
+      .expectHeader().valueEquals("ETag", "\"0\"")
+      .expectBody().jsonPath("$.name").isEqualTo("Reactive");
+
+    Item updated = client.put().uri("/items/" + created.getId()).bodyValue(new Item("Updated", null)).exchange()
+      .expectStatus().isOk()
+      .expectBody(Item.class).returnResult().getResponseBody();
+    assertEquals("Updated", updated.getName());
+    assertEquals(1L, updated.getVersion());
+
+    client.delete().uri("/items/" + created.getId()).exchange().expectStatus().isNoContent().expectBody().isEmpty();
+    client.get().uri("/items/" + created.getId()).exchange().expectStatus().isNotFound().expectBody().isEmpty();
+    client.put().uri("/items/" + created.getId()).bodyValue(new Item("Gone", null)).exchange()
+      .expectStatus().isNotFound().expectBody().isEmpty();
+    client.delete().uri("/items/" + created.getId()).exchange().expectStatus().isNotFound().expectBody().isEmpty();
+  }
+
+  @Test
+  void paginationWithCursor() {
+    for (int i = 0; i < 5; i++) {
+      create(new Item("Page " + i, null));
+    }
+
+    List<Long> seen = new ArrayList<>();
+    String url = "/items?limit=2";
+    for (int pages = 0; url != null && pages < 100; pages++) {
+      var result = client.get().uri(url).exchange().expectStatus().isOk().expectBody(Item[].class).returnResult();
+      Arrays.stream(result.getResponseBody()).map(Item::getId).forEach(seen::add);
+      String next = result.getResponseHeaders().getFirst("Next-Cursor");
+      url = next == null ? null : "/items?limit=2&after=" + next;
+    }
+    assertEquals(seen.stream().distinct().count(), seen.size());
+    assertTrue(seen.size() >= 5);
+
+    client.get().uri("/items?after=not-a-cursor").exchange()
+      .expectStatus().isBadRequest()
+      .expectBody().jsonPath("$.error").exists();
+  }
+
+  // Benchmark, off by default: mvn -Preactive test -Dreactive.benchmark=true. 1000 concurrent
+  // clients by default; raise -Dreactive.benchmark.requests (per client) for a longer run.
+  // Both stacks get a 5-connection pool and hit the database on every request.
+  @Test
+  @EnabledIfSystemProperty(named = "reactive.benchmark", matches = "true")
+  void loadComparedWithJpa() throws Exception {
+    int clients = Integer.getInteger("reactive.benchmark.clients", 1000);
+    int requests = Integer.getInteger("reactive.benchmark.requests", 3);
+    for (int i = 0; i < 200; i++) {
+      create(new Item("Load " + i, "benchmark row"));
+    }
+
+    ConfigurableApplicationContext jpa = new SpringApplicationBuilder(Lab09Application.class).run(
+      "--server.port=0",
+      "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+      "--spring.datasource.username=postgres",
+      "--spring.datasource.password=",
+      "--spring.jpa.hibernate.ddl-auto=none");
+    try {
+      String jpaUrl = "http://localhost:" + jpa.getEnvironment().getProperty("local.server.port") + "/items?limit=20";
+      String reactiveUrl = "http://localhost:" + port + "/items?limit=20";
+
+      load(jpaUrl, 50, 5);
+      load(reactiveUrl, 50, 5);
+      Map<String, Object> jpaResult = load(jpaUrl, clients, requests);
+      Map<String, Object> reactiveResult = load(reactiveUrl, clients, requests);
+
+      System.out.println("GET /items?limit=20, " + clients + " concurrent clients x " + requests + " requests");
+      System.out.println("  JPA (servlet, Hikari 5):  " + jpaResult);
+      System.out.println("  R2DBC (WebFlux, pool 5):  " + reactiveResult);
+      assertEquals(clients * requests, jpaResult.get("requests"));
+      assertEquals(clients * requests, reactiveResult.get("requests"));
+    } finally {
+      jpa.close();
+    }
+  }
+
+  // Reads the response body too: an unread body is never released back to Netty
+  private Item create(Item item) {
+    return client.post().uri("/items").bodyValue(item).exchange()
+      .expectStatus().isCreated()
+      .expectBody(Item.class).returnResult().getResponseBody();
+  }
+
+  // Each client sends its requests one after another; all clients run at once
+  private static Map<String, Object> load(String url, int clients, int requests) throws Exception {
+    HttpClient http = HttpClient.newHttpClient();
+    HttpRequest request = HttpRequest.newBuilder(URI.create(url)).build();
+    long[] latencies = new long[clients * requests];
+    AtomicInteger done = new AtomicInteger();
+
+    long start = System.nanoTime();
+    CompletableFuture<?>[] running = new CompletableFuture<?>[clients];
+    for (int c = 0; c < clients; c++) {
+      running[c] = send(http, request, requests, latencies, done);
+    }
+    CompletableFuture.allOf(running).get(5, TimeUnit.MINUTES);
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    Arrays.sort(latencies);
+    return Map.of(
+      "requests", done.get(),
+      "rps", Math.round(done.get() / seconds),
+      "p50_ms", latencies[latencies.length / 2] / 1_000_000.0,
+      "p99_ms", latencies[(int) (latencies.length * 0.99)] / 1_000_000.0);
+  }
+
+  private static CompletableFuture<Void> send(HttpClient http, HttpRequest request, int remaining,
+                                              long[] latencies, AtomicInteger done) {
+    if (remaining == 0) {
+      return CompletableFuture.completedFuture(null);
+    }
+    long sent = System.nanoTime();
+    return http.sendAsync(request, HttpResponse.BodyHandlers.discarding()).thenCompose(response -> {
+      assertEquals(HttpStatus.OK.value(), response.statusCode());
+      latencies[done.getAndIncrement()] = System.nanoTime() - sent;
+      return send(http, request, remaining - 1, latencies, done);
+    });
+  }
+
+  private static EmbeddedPostgres createSchema(EmbeddedPostgres postgres) {
+    new SpringApplicationBuilder(Lab09Application.class).web(WebApplicationType.NONE).run(
+      "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+      "--spring.datasource.username=postgres",
+      "--spring.datasource.password=",
+      "--spring.jpa.hibernate.ddl-auto=create").close();
+    return postgres;
+  }
+
+  private static EmbeddedPostgres start() {
+    try {
+      return EmbeddedPostgres.start();
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not start embedded PostgreSQL", e);
+    }
+  }
+}
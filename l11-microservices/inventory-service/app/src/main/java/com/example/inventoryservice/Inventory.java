@@ -8,14 +8,17 @@ public class Inventory {
 
     @DocumentId
     private String productId;
-    private int quantity;
+    private long quantity;
+    // Number of shard documents the quantity is split over (0: not sharded yet)
+    private int shards;
 
     public Inventory() {
     }
 
-    public Inventory(String productId, int quantity) {
+    public Inventory(String productId, long quantity, int shards) {
         this.productId = productId;
         this.quantity = quantity;
+        this.shards = shards;
     }
 
     public String getProductId() {
@@ -26,11 +29,19 @@ public class Inventory {
         this.productId = productId;
     }
 
-    public int getQuantity() {
+    public long getQuantity() {
         return quantity;
     }
 
-    public void setQuantity(int quantity) {
+    public void setQuantity(long quantity) {
         this.quantity = quantity;
     }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public void setShards(int shards) {
+        this.shards = shards;
+    }
 }
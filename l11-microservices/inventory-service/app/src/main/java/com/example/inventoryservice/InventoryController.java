@@ -1,12 +1,12 @@
 package com.example.inventoryservice;
 
-import com.google.cloud.spring.data.firestore.FirestoreTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @RestController
@@ -15,10 +15,12 @@ public class InventoryController {
 
     private static final Logger logger = LoggerFactory.getLogger(InventoryController.class);
 
-    private final FirestoreTemplate firestoreTemplate;
+    private final ShardedInventory inventory;
+    private final InventoryNearCache nearCache;
 
-    public InventoryController(FirestoreTemplate firestoreTemplate) {
-        this.firestoreTemplate = firestoreTemplate;
+    public InventoryController(ShardedInventory inventory, InventoryNearCache nearCache) {
+        this.inventory = inventory;
+        this.nearCache = nearCache;
     }
 
     @PostMapping
@@ -26,12 +28,16 @@ public class InventoryController {
         try {
             String productId = (String) request.get("productId");
             int quantity = (Integer) request.get("quantity");
+            Integer shards = (Integer) request.get("shards");
+            if (shards != null && (shards < 1 || shards > inventory.maxShards())) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "shards must be between 1 and " + inventory.maxShards()));
+            }
 
-            Inventory inventory = new Inventory(productId, quantity);
-            firestoreTemplate.save(inventory);
+            Inventory saved = inventory.set(productId, quantity, shards);
 
-            logger.info("Added inventory for product: {} quantity: {}", productId, quantity);
-            return ResponseEntity.ok(inventory);
+            logger.info("Added inventory for product: {} quantity: {} shards: {}", productId, quantity, saved.getShards());
+            return ResponseEntity.ok(saved);
         } catch (Exception e) {
             logger.error("Error adding inventory", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -39,14 +45,17 @@ public class InventoryController {
         }
     }
 
+    // Served from the near-cache when the entry was confirmed in sync within maxStalenessMs
+    // (default inventory.cache.max-staleness); maxStalenessMs=0 always reads Firestore
     @GetMapping("/{productId}")
-    public ResponseEntity<?> getInventory(@PathVariable String productId) {
+    public ResponseEntity<?> getInventory(@PathVariable String productId,
+                                          @RequestParam(required = false) Long maxStalenessMs) {
         try {
-            Inventory inventory = firestoreTemplate.findById(productId, Inventory.class);
-            if (inventory == null) {
+            Inventory found = nearCache.get(productId, maxStalenessMs);
+            if (found == null) {
                 return ResponseEntity.notFound().build();
             }
-            return ResponseEntity.ok(inventory);
+            return ResponseEntity.ok(found);
         } catch (Exception e) {
             logger.error("Error getting inventory", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -54,26 +63,72 @@ public class InventoryController {
         }
     }
 
+    @GetMapping("/cache/stats")
+    public Map<String, Object> cacheStats() {
+        return nearCache.stats();
+    }
+
+    // Shard count for a product: more shards for products with more concurrent orders.
+    // Stock is kept and spread evenly over the new shards.
+    @PutMapping("/{productId}/shards")
+    public ResponseEntity<?> setShards(@PathVariable String productId, @RequestBody Map<String, Object> request) {
+        try {
+            Integer shards = (Integer) request.get("shards");
+            if (shards == null || shards < 1 || shards > inventory.maxShards()) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "shards must be between 1 and " + inventory.maxShards()));
+            }
+
+            Inventory resharded = inventory.reshard(productId, shards);
+            if (resharded == null) {
+                return ResponseEntity.notFound().build();
+            }
+            logger.info("Product: {} now has {} shards", productId, shards);
+            return ResponseEntity.ok(resharded);
+        } catch (Exception e) {
+            logger.error("Error changing shards", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // Stock check and decrement in one call and one transaction (on one shard, or on all
+    // of them when that shard can't cover it). 200, 409 with what is available, or 404.
+    // "remaining" is the product's total after the reservation; when only one of several
+    // shards was read it is replaced by "remainingInShard", a lower bound on the total.
     @PostMapping("/reserve")
     public ResponseEntity<?> reserveInventory(@RequestBody Map<String, Object> request) {
         try {
             String productId = (String) request.get("productId");
             int quantity = (Integer) request.get("quantity");
-
-            Inventory inventory = firestoreTemplate.findById(productId, Inventory.class);
-            if (inventory == null) {
-                return ResponseEntity.badRequest().body(Map.of("error", "Product not found"));
+            if (quantity <= 0) {
+                return ResponseEntity.badRequest().body(Map.of("error", "quantity must be positive"));
             }
 
-            if (inventory.getQuantity() < quantity) {
-                return ResponseEntity.badRequest().body(Map.of("error", "Insufficient stock"));
+            ShardedInventory.Reservation reservation = inventory.reserve(productId, quantity);
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("productId", productId);
+            body.put("requested", quantity);
+            switch (reservation.status()) {
+                case RESERVED -> {
+                    if (reservation.available() != null) {
+                        body.put("remaining", reservation.available());
+                    } else {
+                        body.put("remainingInShard", reservation.remainingInShard());
+                    }
+                    logger.info("Reserved {} units of product: {}", quantity, productId);
+                    return ResponseEntity.ok(body);
+                }
+                case INSUFFICIENT_STOCK -> {
+                    body.put("error", "Insufficient stock");
+                    body.put("available", reservation.available());
+                    return ResponseEntity.status(HttpStatus.CONFLICT).body(body);
+                }
+                default -> {
+                    body.put("error", "Product not found");
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(body);
+                }
             }
-
-            inventory.setQuantity(inventory.getQuantity() - quantity);
-            firestoreTemplate.save(inventory);
-
-            logger.info("Reserved {} units of product: {}", quantity, productId);
-            return ResponseEntity.ok(inventory);
         } catch (Exception e) {
             logger.error("Error reserving inventory", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -0,0 +1,261 @@
+package com.example.inventoryservice;
+
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-process cache of product stock for GET /inventory/{id}. Each cached product has a
+// Firestore snapshot listener on its shards, so entries are updated as soon as Firestore
+// pushes a change instead of expiring on a timer. Bounded, least recently used first out.
+// Once its listener has delivered the first snapshot, an entry is served for as long as
+// the listener stays up: a live listen stream is what keeps it current, and a stream
+// error drops the entry. Until then the entry only holds the value read on the miss, which
+// is served within the staleness budget (timed on the local clock) and read again after.
+@Component
+public class InventoryNearCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(InventoryNearCache.class);
+
+    private final Firestore firestore;
+    private final ShardedInventory inventory;
+    private final int maxEntries;
+    private final long defaultMaxStalenessMillis;
+    private final Clock clock;
+
+    // Access-ordered: iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bypasses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong listenerErrors = new AtomicLong();
+
+    @Autowired
+    public InventoryNearCache(Firestore firestore, ShardedInventory inventory,
+                              @Value("${inventory.cache.max-entries}") int maxEntries,
+                              @Value("${inventory.cache.max-staleness}") Duration maxStaleness) {
+        this(firestore, inventory, maxEntries, maxStaleness, Clock.systemUTC());
+    }
+
+    InventoryNearCache(Firestore firestore, ShardedInventory inventory, int maxEntries, Duration maxStaleness,
+                       Clock clock) {
+        this.firestore = firestore;
+        this.inventory = inventory;
+        this.maxEntries = maxEntries;
+        this.defaultMaxStalenessMillis = maxStaleness.toMillis();
+        this.clock = clock;
+    }
+
+    // maxStalenessMillis: how old a value not yet confirmed by the listener may be (null:
+    // the default budget, 0: always read Firestore)
+    public Inventory get(String productId, Long maxStalenessMillis) throws ExecutionException, InterruptedException {
+        long budget = maxStalenessMillis == null ? defaultMaxStalenessMillis : maxStalenessMillis;
+        if (budget <= 0) {
+            bypasses.incrementAndGet();
+            return inventory.get(productId);
+        }
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(productId);
+        }
+        if (entry != null) {
+            CompletableFuture<Inventory> inFlight;
+            boolean leader = false;
+            synchronized (entry) {
+                if (entry.listening || clock.millis() - entry.lastSyncMillis <= budget) {
+                    hits.incrementAndGet();
+                    return new Inventory(productId, entry.quantity, entry.shards);
+                }
+                // One Firestore read per entry at a time; concurrent readers wait for it
+                inFlight = entry.revalidation;
+                if (inFlight == null) {
+                    inFlight = new CompletableFuture<>();
+                    entry.revalidation = inFlight;
+                    leader = true;
+                }
+            }
+            revalidations.incrementAndGet();
+            if (leader) {
+                revalidate(productId, entry, inFlight);
+            }
+            return inFlight.get();
+        }
+
+        misses.incrementAndGet();
+        long readMillis = clock.millis();
+        Inventory loaded = inventory.get(productId);
+        // Unsharded (pre-sharding) products have no shards to listen to
+        if (loaded != null && loaded.getShards() > 0) {
+            cache(productId, loaded, readMillis);
+        }
+        return loaded;
+    }
+
+    // Completes result, successfully or not, and clears it from the entry
+    private void revalidate(String productId, Entry entry, CompletableFuture<Inventory> result) {
+        try {
+            long readMillis = clock.millis();
+            long version;
+            synchronized (entry) {
+                version = entry.version;
+            }
+            Inventory loaded = inventory.get(productId);
+            if (loaded == null || loaded.getShards() == 0) {
+                invalidate(productId, entry);
+            } else {
+                synchronized (entry) {
+                    // A snapshot that arrived during the read is at least as recent; keep it
+                    if (entry.version == version) {
+                        entry.quantity = loaded.getQuantity();
+                        entry.shards = loaded.getShards();
+                        entry.lastSyncMillis = Math.max(entry.lastSyncMillis, readMillis);
+                    }
+                }
+            }
+            result.complete(loaded);
+        } catch (ExecutionException e) {
+            result.completeExceptionally(e.getCause());
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        } finally {
+            synchronized (entry) {
+                entry.revalidation = null;
+            }
+        }
+    }
+
+    private void cache(String productId, Inventory loaded, long readMillis) {
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (entries) {
+            if (entries.containsKey(productId)) {
+                return;
+            }
+            Entry entry = new Entry(loaded.getQuantity(), loaded.getShards(), readMillis);
+            entries.put(productId, entry);
+            // First snapshot is the current state, then one per change
+            entry.registration = firestore.collection("inventory").document(productId).collection("shards")
+                    .addSnapshotListener((snapshot, error) -> onSnapshot(productId, entry, snapshot, error));
+            while (entries.size() > maxEntries) {
+                Map.Entry<String, Entry> eldest = entries.entrySet().iterator().next();
+                entries.remove(eldest.getKey());
+                evicted.add(eldest.getValue());
+            }
+        }
+        for (Entry entry : evicted) {
+            entry.registration.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void onSnapshot(String productId, Entry entry, QuerySnapshot snapshot, FirestoreException error) {
+        if (error != null) {
+            // Without a listener the entry can't be trusted; the next read reloads it
+            listenerErrors.incrementAndGet();
+            logger.warn("Inventory listener for product: {} failed, dropping cache entry", productId, error);
+            invalidate(productId, entry);
+            return;
+        }
+
+        long quantity = 0;
+        for (QueryDocumentSnapshot shard : snapshot) {
+            Long shardQuantity = shard.getLong("quantity");
+            quantity += shardQuantity == null ? 0 : shardQuantity;
+        }
+
+        boolean update;
+        synchronized (entry) {
+            update = entry.listening;
+            entry.quantity = quantity;
+            entry.shards = snapshot.size();
+            entry.lastSyncMillis = clock.millis();
+            entry.version++;
+            entry.listening = true;
+        }
+        if (update) {
+            updates.incrementAndGet();
+        }
+    }
+
+    private void invalidate(String productId, Entry entry) {
+        synchronized (entries) {
+            entries.remove(productId, entry);
+        }
+        if (entry.registration != null) {
+            entry.registration.remove();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        // A read that waited on a revalidation wasn't served from the cache either
+        long lookups = hits.get() + misses.get() + revalidations.get();
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", size);
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("hitRatio", lookups == 0 ? 0.0 : (double) hits.get() / lookups);
+        stats.put("bypasses", bypasses.get());
+        stats.put("revalidations", revalidations.get());
+        stats.put("evictions", evictions.get());
+        stats.put("listenerUpdates", updates.get());
+        stats.put("listenerErrors", listenerErrors.get());
+        stats.put("maxStalenessMillis", defaultMaxStalenessMillis);
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (entries) {
+            entries.values().forEach(entry -> entry.registration.remove());
+            entries.clear();
+        }
+    }
+
+    private static class Entry {
+
+        // All fields but registration are guarded by the entry's lock
+        long quantity;
+        int shards;
+        // Local time this entry was last confirmed in sync with Firestore
+        long lastSyncMillis;
+        // Bumped by every listener snapshot
+        long version;
+        // Set by the first listener snapshot; the entry is dropped on a listener error
+        boolean listening;
+        // The Firestore read in progress for this entry, if any
+        CompletableFuture<Inventory> revalidation;
+        ListenerRegistration registration;
+
+        Entry(long quantity, int shards, long lastSyncMillis) {
+            this.quantity = quantity;
+            this.shards = shards;
+            this.lastSyncMillis = lastSyncMillis;
+        }
+    }
+}
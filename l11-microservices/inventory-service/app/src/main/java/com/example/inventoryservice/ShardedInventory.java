@@ -0,0 +1,220 @@
+package com.example.inventoryservice;
+
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.Transaction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Stock as a sharded counter: inventory/{productId} holds the shard count and
+// inventory/{productId}/shards/{0..N-1} each hold part of the quantity. A reservation
+// decrements one random shard, so a hot product takes N times the writes a single
+// document allows (~1/s each). When the chosen shard can't cover a reservation, one
+// transaction over all shards takes the units and spreads what is left evenly again.
+// Shard counts are cached here, so a reservation reads and writes its shard only.
+@Component
+public class ShardedInventory {
+
+    private static final String COLLECTION = "inventory";
+    private static final String SHARDS = "shards";
+    private static final String QUANTITY = "quantity";
+
+    private final Firestore firestore;
+    private final int defaultShards;
+    private final int maxShards;
+
+    // Shard count per product, as last read or written by this instance. May lag a reshard
+    // done elsewhere: a shard that no longer exists or runs dry sends the reservation to the
+    // slow path, which reads the product document and refreshes the count.
+    private final Map<String, Integer> shardCounts = new ConcurrentHashMap<>();
+
+    public ShardedInventory(Firestore firestore,
+                            @Value("${inventory.shards.default}") int defaultShards,
+                            @Value("${inventory.shards.max}") int maxShards) {
+        this.firestore = firestore;
+        this.defaultShards = defaultShards;
+        this.maxShards = maxShards;
+    }
+
+    public int maxShards() {
+        return maxShards;
+    }
+
+    // Sets the stock, split over the given shard count (default when null)
+    public Inventory set(String productId, long quantity, Integer shards) throws ExecutionException, InterruptedException {
+        int count = shards == null ? defaultShards : shards;
+        DocumentReference product = product(productId);
+        firestore.runTransaction(transaction -> {
+            DocumentSnapshot snapshot = transaction.get(product).get();
+            QuerySnapshot existing = transaction.get(product.collection(SHARDS)).get();
+            write(transaction, product, quantity, shardCount(snapshot), count, existing);
+            return null;
+        }).get();
+        shardCounts.put(productId, count);
+        return new Inventory(productId, quantity, count);
+    }
+
+    // Same stock, different shard count; null if the product doesn't exist
+    public Inventory reshard(String productId, int shards) throws ExecutionException, InterruptedException {
+        DocumentReference product = product(productId);
+        Inventory resharded = firestore.runTransaction(transaction -> {
+            DocumentSnapshot snapshot = transaction.get(product).get();
+            if (!snapshot.exists()) {
+                return null;
+            }
+            QuerySnapshot existing = transaction.get(product.collection(SHARDS)).get();
+            long total = total(snapshot, existing);
+            write(transaction, product, total, shardCount(snapshot), shards, existing);
+            return new Inventory(productId, total, shards);
+        }).get();
+        if (resharded != null) {
+            shardCounts.put(productId, shards);
+        }
+        return resharded;
+    }
+
+    // Sum of all shards (not transactional: concurrent reservations may land in between)
+    public Inventory get(String productId) throws ExecutionException, InterruptedException {
+        DocumentReference product = product(productId);
+        DocumentSnapshot snapshot = product.get().get();
+        if (!snapshot.exists()) {
+            return null;
+        }
+        QuerySnapshot shards = product.collection(SHARDS).get().get();
+        return new Inventory(productId, total(snapshot, shards), shardCount(snapshot));
+    }
+
+    public Reservation reserve(String productId, int quantity) throws ExecutionException, InterruptedException {
+        DocumentReference product = product(productId);
+
+        Integer cached = shardCounts.get(productId);
+        if (cached == null) {
+            // Read outside any transaction: the product document is not part of the fast path
+            DocumentSnapshot snapshot = product.get().get();
+            if (!snapshot.exists()) {
+                return new Reservation(Status.NOT_FOUND, productId, quantity, null, null);
+            }
+            cached = shardCount(snapshot);
+            if (cached > 0) {
+                shardCounts.put(productId, cached);
+            }
+        }
+        int shards = cached;
+
+        // Fast path: read and write one shard only, so reservations never conflict on the
+        // product document. Unsharded (pre-sharding) products go straight to the slow path.
+        Reservation reservation = shards == 0 ? null : firestore.runTransaction(transaction -> {
+            DocumentReference shard = product.collection(SHARDS)
+                    .document(Integer.toString(ThreadLocalRandom.current().nextInt(shards)));
+            DocumentSnapshot shardSnapshot = transaction.get(shard).get();
+            if (!shardSnapshot.exists()) {
+                // Resharded to fewer shards since the count was cached
+                return null;
+            }
+            Long shardQuantity = shardSnapshot.getLong(QUANTITY);
+            long available = shardQuantity == null ? 0 : shardQuantity;
+            if (available < quantity) {
+                return null;
+            }
+            transaction.update(shard, QUANTITY, available - quantity);
+            // The total isn't known without reading every shard, only what this one has left
+            return new Reservation(Status.RESERVED, productId, quantity,
+                    shards == 1 ? available - quantity : null, available - quantity);
+        }).get();
+        if (reservation != null) {
+            return reservation;
+        }
+
+        // Slow path: the shard ran dry (or the product predates sharding). Take the
+        // units from the total and rebalance all shards in one transaction.
+        shardCounts.remove(productId);
+        return firestore.runTransaction(transaction -> {
+            DocumentSnapshot snapshot = transaction.get(product).get();
+            if (!snapshot.exists()) {
+                return new Reservation(Status.NOT_FOUND, productId, quantity, null, null);
+            }
+            QuerySnapshot existing = transaction.get(product.collection(SHARDS)).get();
+            long total = total(snapshot, existing);
+            int current = shardCount(snapshot);
+            int count = current == 0 ? defaultShards : current;
+            // Cached even if this attempt is retried: the count only changes on a reshard
+            shardCounts.put(productId, count);
+            if (total < quantity) {
+                return new Reservation(Status.INSUFFICIENT_STOCK, productId, quantity, total, null);
+            }
+            write(transaction, product, total - quantity, current, count, existing);
+            return new Reservation(Status.RESERVED, productId, quantity, total - quantity, null);
+        }).get();
+    }
+
+    // Writes `count` shards holding `quantity` between them and deletes shards beyond
+    // `count` left from a higher shard count. The product document is only rewritten when
+    // the shard count changes, not on every rebalance.
+    private static void write(Transaction transaction, DocumentReference product, long quantity, int current,
+                              int count, QuerySnapshot existing) {
+        if (current != count) {
+            transaction.set(product, Map.of(SHARDS, count));
+        }
+        CollectionReference shards = product.collection(SHARDS);
+        for (int i = 0; i < count; i++) {
+            long share = quantity / count + (i < quantity % count ? 1 : 0);
+            transaction.set(shards.document(Integer.toString(i)), Map.of(QUANTITY, share));
+        }
+        for (QueryDocumentSnapshot shard : existing) {
+            if (index(shard.getId()) >= count) {
+                transaction.delete(shard.getReference());
+            }
+        }
+    }
+
+    // Products written before sharding keep their quantity on the product document
+    private static long total(DocumentSnapshot product, QuerySnapshot shards) {
+        if (shardCount(product) == 0) {
+            Long quantity = product.getLong(QUANTITY);
+            return quantity == null ? 0 : quantity;
+        }
+        long total = 0;
+        for (QueryDocumentSnapshot shard : shards) {
+            Long quantity = shard.getLong(QUANTITY);
+            total += quantity == null ? 0 : quantity;
+        }
+        return total;
+    }
+
+    private static int shardCount(DocumentSnapshot product) {
+        Long shards = product.getLong(SHARDS);
+        return shards == null ? 0 : shards.intValue();
+    }
+
+    private static int index(String shardId) {
+        try {
+            return Integer.parseInt(shardId);
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    private DocumentReference product(String productId) {
+        return firestore.collection(COLLECTION).document(productId);
+    }
+
+    public enum Status {
+        RESERVED, INSUFFICIENT_STOCK, NOT_FOUND
+    }
+
+    // available is the total left after a reservation, or what was there when it failed.
+    // A fast-path reservation on a product with several shards only knows its own shard:
+    // available is null and remainingInShard is what that shard has left.
+    public record Reservation(Status status, String productId, int requested, Long available,
+                              Long remainingInShard) {
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.inventoryservice;
+
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.EventListener;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import io.grpc.Status;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Firestore, its listeners and the clock are mocked: each cached product gets a
+// registration and a captured listener the tests fire snapshots and errors through
+class InventoryNearCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final Map<String, ListenerRegistration> registrations = new HashMap<>();
+    private final Map<String, EventListener<QuerySnapshot>> listeners = new HashMap<>();
+
+    private Firestore firestore;
+    private ShardedInventory inventory;
+    private InventoryNearCache cache;
+
+    @BeforeEach
+    void setUp() {
+        firestore = mock(Firestore.class);
+        inventory = mock(ShardedInventory.class);
+        CollectionReference products = mock(CollectionReference.class);
+        when(firestore.collection("inventory")).thenReturn(products);
+        when(products.document(any())).thenAnswer(invocation -> product(invocation.getArgument(0)));
+
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).thenAnswer(invocation -> now.get());
+        cache = new InventoryNearCache(firestore, inventory, 2, Duration.ofSeconds(2), clock);
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvictedAndStopsListening() throws Exception {
+        stock("a", 10);
+        stock("b", 20);
+        stock("c", 30);
+
+        cache.get("a", null);
+        cache.get("b", null);
+        cache.get("a", null);
+        cache.get("c", null);
+
+        verify(registrations.get("b")).remove();
+        verify(registrations.get("a"), never()).remove();
+        Map<String, Object> stats = cache.stats();
+        assertEquals(2, stats.get("entries"));
+        assertEquals(1L, stats.get("evictions"));
+        assertEquals(1L, stats.get("hits"));
+
+        // Evicted: the next read misses and loads it again
+        cache.get("b", null);
+        verify(inventory, times(2)).get("b");
+        verify(registrations.get("a")).remove();
+    }
+
+    @Test
+    void listenerErrorInvalidatesEntry() throws Exception {
+        stock("a", 10);
+        cache.get("a", null);
+
+        listeners.get("a").onEvent(null, FirestoreException.forServerRejection(Status.UNAVAILABLE, "stream reset"));
+
+        verify(registrations.get("a")).remove();
+        assertEquals(0, cache.stats().get("entries"));
+        assertEquals(1L, cache.stats().get("listenerErrors"));
+        cache.get("a", null);
+        verify(inventory, times(2)).get("a");
+        assertEquals(2L, cache.stats().get("misses"));
+    }
+
+    @Test
+    void entryWithoutListenerSnapshotIsReadAgainAfterBudget() throws Exception {
+        stock("a", 10);
+        cache.get("a", null);
+
+        // The listener hasn't delivered its first snapshot while the stock changes in Firestore
+        stock("a", 7);
+        now.addAndGet(2_001);
+        assertEquals(7, cache.get("a", null).getQuantity());
+        assertEquals(1L, cache.stats().get("revalidations"));
+
+        // That read confirmed the entry again
+        now.addAndGet(1_000);
+        assertEquals(7, cache.get("a", null).getQuantity());
+        assertEquals(1L, cache.stats().get("hits"));
+        verify(inventory, times(2)).get("a");
+
+        // A tighter budget for one read
+        assertEquals(7, cache.get("a", 500L).getQuantity());
+        assertEquals(2L, cache.stats().get("revalidations"));
+        // 1 miss, 2 revalidations, 1 hit
+        assertEquals(0.25, cache.stats().get("hitRatio"));
+    }
+
+    @Test
+    void liveListenerIsTrustedBeyondBudget() throws Exception {
+        stock("a", 10);
+        cache.get("a", null);
+
+        listeners.get("a").onEvent(snapshot(4L, 2L), null);
+        now.addAndGet(60_000);
+
+        Inventory served = cache.get("a", null);
+        assertEquals(6, served.getQuantity());
+        assertEquals(2, served.getShards());
+        assertEquals(6, cache.get("a", 500L).getQuantity());
+        assertEquals(2L, cache.stats().get("hits"));
+        assertEquals(0L, cache.stats().get("revalidations"));
+        verify(inventory, times(1)).get("a");
+
+        listeners.get("a").onEvent(snapshot(3L, 2L), null);
+        assertEquals(5, cache.get("a", null).getQuantity());
+        assertEquals(1L, cache.stats().get("listenerUpdates"));
+    }
+
+    @Test
+    void concurrentReadsShareOneRevalidation() throws Exception {
+        stock("a", 10);
+        cache.get("a", null);
+
+        CountDownLatch release = new CountDownLatch(1);
+        when(inventory.get("a")).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return new Inventory("a", 7, 1);
+        });
+        now.addAndGet(2_001);
+
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Inventory>> reads = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                reads.add(readers.submit(() -> cache.get("a", null)));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while ((Long) cache.stats().get("revalidations") < 4 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<Inventory> read : reads) {
+                assertEquals(7, read.get(5, TimeUnit.SECONDS).getQuantity());
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+        assertEquals(4L, cache.stats().get("revalidations"));
+        verify(inventory, times(2)).get("a");
+    }
+
+    @Test
+    void productDeletedInFirestoreIsDropped() throws Exception {
+        stock("a", 10);
+        cache.get("a", null);
+
+        when(inventory.get("a")).thenReturn(null);
+        now.addAndGet(5_000);
+
+        assertEquals(null, cache.get("a", null));
+        verify(registrations.get("a")).remove();
+        assertEquals(0, cache.stats().get("entries"));
+    }
+
+    private void stock(String productId, long quantity) throws Exception {
+        when(inventory.get(productId)).thenReturn(new Inventory(productId, quantity, 1));
+    }
+
+    private DocumentReference product(String productId) {
+        DocumentReference product = mock(DocumentReference.class);
+        CollectionReference shards = mock(CollectionReference.class);
+        when(product.collection("shards")).thenReturn(shards);
+        ListenerRegistration registration = mock(ListenerRegistration.class);
+        when(shards.addSnapshotListener(any(EventListener.class))).thenAnswer(invocation -> {
+            registrations.put(productId, registration);
+            listeners.put(productId, invocation.getArgument(0));
+            return registration;
+        });
+        return product;
+    }
+
+    private static QuerySnapshot snapshot(Long... quantities) {
+        List<QueryDocumentSnapshot> shards = new ArrayList<>();
+        for (Long quantity : quantities) {
+            QueryDocumentSnapshot shard = mock(QueryDocumentSnapshot.class);
+            when(shard.getLong("quantity")).thenReturn(quantity);
+            shards.add(shard);
+        }
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.iterator()).thenAnswer(invocation -> shards.iterator());
+        when(snapshot.size()).thenReturn(shards.size());
+        return snapshot;
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.inventoryservice;
+
+import com.google.cloud.NoCredentials;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Runs against the Firestore emulator and is skipped without it:
+//   gcloud emulators firestore start --host-port=localhost:8085
+//   FIRESTORE_EMULATOR_HOST=localhost:8085 mvn test
+class ShardedInventoryTest {
+
+    private static Firestore firestore;
+    private static ShardedInventory inventory;
+
+    @BeforeAll
+    static void connect() {
+        String host = System.getenv("FIRESTORE_EMULATOR_HOST");
+        assumeTrue(host != null && !host.isBlank(), "FIRESTORE_EMULATOR_HOST is not set");
+        firestore = FirestoreOptions.newBuilder()
+                .setProjectId("inventory-test")
+                .setEmulatorHost(host)
+                .setCredentials(NoCredentials.getInstance())
+                .build()
+                .getService();
+        inventory = new ShardedInventory(firestore, 1, 100);
+    }
+
+    @AfterAll
+    static void close() throws Exception {
+        if (firestore != null) {
+            firestore.close();
+        }
+    }
+
+    @Test
+    void concurrentReservationsNeverOversell() throws Exception {
+        String productId = productId();
+        int stock = 100;
+        inventory.set(productId, stock, 10);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<ShardedInventory.Reservation>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < 150; i++) {
+                results.add(pool.submit(() -> inventory.reserve(productId, 1)));
+            }
+            int reserved = 0;
+            for (Future<ShardedInventory.Reservation> result : results) {
+                ShardedInventory.Reservation reservation = result.get();
+                if (reservation.status() == ShardedInventory.Status.RESERVED) {
+                    reserved++;
+                } else {
+                    assertEquals(ShardedInventory.Status.INSUFFICIENT_STOCK, reservation.status());
+                }
+            }
+
+            long left = inventory.get(productId).getQuantity();
+            assertEquals(stock, reserved);
+            assertEquals(0, left);
+            assertEquals(0, shardSum(productId));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void drySelectedShardRebalancesAcrossAllShards() throws Exception {
+        String productId = productId();
+        // One unit per shard: whichever shard is picked can't cover two
+        inventory.set(productId, 4, 4);
+
+        ShardedInventory.Reservation reservation = inventory.reserve(productId, 2);
+
+        assertEquals(ShardedInventory.Status.RESERVED, reservation.status());
+        assertEquals(2L, reservation.available());
+        assertNull(reservation.remainingInShard());
+        List<Long> shares = shares(productId);
+        assertEquals(List.of(1L, 1L, 0L, 0L), shares);
+
+        ShardedInventory.Reservation tooMany = inventory.reserve(productId, 3);
+        assertEquals(ShardedInventory.Status.INSUFFICIENT_STOCK, tooMany.status());
+        assertEquals(2L, tooMany.available());
+    }
+
+    @Test
+    void fastPathReportsWhatIsLeftInTheShard() throws Exception {
+        String productId = productId();
+        inventory.set(productId, 40, 4);
+
+        ShardedInventory.Reservation reservation = inventory.reserve(productId, 3);
+
+        assertEquals(ShardedInventory.Status.RESERVED, reservation.status());
+        assertNull(reservation.available());
+        assertEquals(7L, reservation.remainingInShard());
+        assertEquals(37, inventory.get(productId).getQuantity());
+    }
+
+    @Test
+    void reshardKeepsStockAndDeletesShardsBeyondTheNewCount() throws Exception {
+        String productId = productId();
+        inventory.set(productId, 10, 5);
+        inventory.reserve(productId, 1);
+
+        Inventory resharded = inventory.reshard(productId, 2);
+
+        assertEquals(9, resharded.getQuantity());
+        assertEquals(2, resharded.getShards());
+        assertEquals(List.of(5L, 4L), shares(productId));
+        assertEquals(9, inventory.get(productId).getQuantity());
+
+        inventory.reshard(productId, 3);
+        assertEquals(List.of(3L, 3L, 3L), shares(productId));
+        assertNull(inventory.reshard(productId(), 3));
+    }
+
+    @Test
+    void rebalanceLeavesProductDocumentAlone() throws Exception {
+        String productId = productId();
+        inventory.set(productId, 4, 4);
+        Timestamp written = firestore.collection("inventory").document(productId).get().get().getUpdateTime();
+
+        // Slow path: rebalances the shards, same shard count
+        assertEquals(ShardedInventory.Status.RESERVED, inventory.reserve(productId, 2).status());
+
+        assertEquals(written, firestore.collection("inventory").document(productId).get().get().getUpdateTime());
+        assertEquals(2, inventory.get(productId).getQuantity());
+    }
+
+    @Test
+    void reservationsFollowReshardByAnotherInstance() throws Exception {
+        String productId = productId();
+        inventory.set(productId, 10, 5);
+        inventory.reserve(productId, 1);
+
+        // This instance still has 5 shards cached
+        new ShardedInventory(firestore, 1, 100).reshard(productId, 2);
+
+        for (int i = 0; i < 9; i++) {
+            assertEquals(ShardedInventory.Status.RESERVED, inventory.reserve(productId, 1).status());
+        }
+        assertEquals(ShardedInventory.Status.INSUFFICIENT_STOCK, inventory.reserve(productId, 1).status());
+        assertEquals(List.of(0L, 0L), shares(productId));
+    }
+
+    @Test
+    void unknownProductIsNotFound() throws Exception {
+        assertEquals(ShardedInventory.Status.NOT_FOUND, inventory.reserve(productId(), 1).status());
+    }
+
+    private static String productId() {
+        return "test-" + UUID.randomUUID();
+    }
+
+    private static CollectionReference shards(String productId) {
+        return firestore.collection("inventory").document(productId).collection("shards");
+    }
+
+    // Shard quantities ordered by shard index
+    private static List<Long> shares(String productId) throws Exception {
+        List<QueryDocumentSnapshot> documents = new ArrayList<>(shards(productId).get().get().getDocuments());
+        documents.sort((a, b) -> Integer.compare(Integer.parseInt(a.getId()), Integer.parseInt(b.getId())));
+        List<Long> shares = new ArrayList<>();
+        for (int i = 0; i < documents.size(); i++) {
+            assertEquals(Integer.toString(i), documents.get(i).getId());
+            shares.add(documents.get(i).getLong("quantity"));
+        }
+        return shares;
+    }
+
+    private static long shardSum(String productId) throws Exception {
+        long sum = 0;
+        for (Long share : shares(productId)) {
+            assertTrue(share >= 0);
+            sum += share;
+        }
+        return sum;
+    }
+}
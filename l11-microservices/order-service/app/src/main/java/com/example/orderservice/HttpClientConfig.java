@@ -0,0 +1,59 @@
+package com.example.orderservice;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+// Pooled, keep-alive HTTP client shared by all calls to inventory-service and
+// notification-service. Limits are per route (per downstream service).
+@Configuration
+public class HttpClientConfig {
+
+    @Bean
+    public PooledConnectionManager connectionManager(
+            @Value("${http.client.max-total}") int maxTotal,
+            @Value("${http.client.max-per-route}") int maxPerRoute,
+            @Value("${http.client.connect-timeout}") Duration connectTimeout,
+            @Value("${http.client.read-timeout}") Duration readTimeout,
+            @Value("${http.client.time-to-live}") Duration timeToLive,
+            @Value("${http.client.validate-after-inactivity}") Duration validateAfterInactivity) {
+
+        PooledConnectionManager connectionManager = new PooledConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(connectTimeout))
+                .setSocketTimeout(Timeout.of(readTimeout))
+                .setTimeToLive(TimeValue.of(timeToLive))
+                .setValidateAfterInactivity(TimeValue.of(validateAfterInactivity))
+                .build());
+        return connectionManager;
+    }
+
+    @Bean
+    public CloseableHttpClient httpClient(
+            PooledConnectionManager connectionManager,
+            @Value("${http.client.read-timeout}") Duration readTimeout,
+            @Value("${http.client.pool-timeout}") Duration poolTimeout,
+            @Value("${http.client.idle-timeout}") Duration idleTimeout) {
+
+        // Closing the client (on shutdown) also closes the pool
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(poolTimeout))
+                        .setResponseTimeout(Timeout.of(readTimeout))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(idleTimeout))
+                .build();
+    }
+}
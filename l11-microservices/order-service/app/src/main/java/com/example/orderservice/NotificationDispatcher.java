@@ -0,0 +1,241 @@
+package com.example.orderservice;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Sends order notifications off the request thread: a bounded queue in front of a fixed
+// worker pool, retries with exponential backoff, and an overflow policy when the queue is
+// full. A slow or failing notification-service never delays an order response.
+@Component
+public class NotificationDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    public enum Overflow {
+        // Reject the notification being submitted
+        DROP_NEWEST,
+        // Evict the longest-waiting notification to make room
+        DROP_OLDEST
+    }
+
+    private final RestTemplate restTemplate;
+    private final String notificationServiceUrl;
+    private final Overflow overflow;
+    private final int queueCapacity;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Duration shutdownTimeout;
+
+    private final BlockingQueue<Runnable> queue;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledThreadPoolExecutor retries;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong lagNanos = new AtomicLong();
+    private final AtomicLong lastLagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    public NotificationDispatcher(RestTemplate restTemplate,
+                                  @Value("${notification.service.url}") String notificationServiceUrl,
+                                  @Value("${notifications.workers}") int workerCount,
+                                  @Value("${notifications.queue-capacity}") int queueCapacity,
+                                  @Value("${notifications.overflow}") Overflow overflow,
+                                  @Value("${notifications.max-attempts}") int maxAttempts,
+                                  @Value("${notifications.initial-backoff}") Duration initialBackoff,
+                                  @Value("${notifications.max-backoff}") Duration maxBackoff,
+                                  @Value("${notifications.shutdown-timeout}") Duration shutdownTimeout) {
+        this.restTemplate = restTemplate;
+        this.notificationServiceUrl = notificationServiceUrl;
+        this.overflow = overflow;
+        this.queueCapacity = queueCapacity;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoff.toMillis();
+        this.maxBackoffMillis = maxBackoff.toMillis();
+        this.shutdownTimeout = shutdownTimeout;
+
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS, queue,
+                new CustomizableThreadFactory("notification-"), this::onQueueFull);
+        // Only waits out backoff delays, then hands the retry back to the workers
+        this.retries = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("notification-retry-"));
+    }
+
+    // Never blocks; returns false if the notification was dropped right away
+    public boolean dispatch(Order order) {
+        submitted.incrementAndGet();
+        return enqueue(new Delivery(order, System.nanoTime(), 1));
+    }
+
+    private boolean enqueue(Delivery delivery) {
+        DeliveryTask task = new DeliveryTask(delivery);
+        workers.execute(task);
+        return !task.dropped;
+    }
+
+    private void deliver(Delivery delivery) {
+        Order order = delivery.order();
+        try {
+            post(order);
+            long lag = System.nanoTime() - delivery.enqueuedAt();
+            sent.incrementAndGet();
+            lagNanos.addAndGet(lag);
+            lastLagNanos.set(lag);
+            maxLagNanos.accumulateAndGet(lag, Math::max);
+            logger.info("Notification sent for order: {}", order.getId());
+        } catch (Exception e) {
+            if (delivery.attempt() >= maxAttempts || !retryable(e)) {
+                failed.incrementAndGet();
+                logger.error("Giving up on notification for order: {} after {} attempt(s)", order.getId(), delivery.attempt(), e);
+                return;
+            }
+            long backoff = backoffMillis(delivery.attempt());
+            try {
+                retries.schedule(() -> enqueue(delivery.nextAttempt()), backoff, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException rejected) {
+                // Shutting down: the retry scheduler is already stopped while workers drain
+                dropped.incrementAndGet();
+                logger.warn("Dropped notification for order: {} (shutting down, retry not scheduled)", order.getId());
+                return;
+            }
+            retried.incrementAndGet();
+            logger.warn("Notification for order: {} failed (attempt {}), retrying in {} ms: {}",
+                    order.getId(), delivery.attempt(), backoff, e.getMessage());
+        }
+    }
+
+    private void post(Order order) {
+        String url = notificationServiceUrl + "/notifications/order";
+        Map<String, Object> request = new HashMap<>();
+        request.put("orderId", order.getId());
+        request.put("customerId", order.getCustomerId());
+        request.put("productId", order.getProductId());
+        request.put("quantity", order.getQuantity());
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        restTemplate.postForEntity(url, new HttpEntity<>(request, headers), Map.class);
+    }
+
+    // 4xx won't succeed on a retry, except 429; 5xx, timeouts and connection errors might
+    private static boolean retryable(Exception e) {
+        if (e instanceof HttpClientErrorException clientError) {
+            return clientError.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS;
+        }
+        return true;
+    }
+
+    // Exponential, capped, with up to 20% jitter so retries from many orders spread out
+    private long backoffMillis(int attempt) {
+        long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 20));
+        return backoff + ThreadLocalRandom.current().nextLong(backoff / 5 + 1);
+    }
+
+    private void onQueueFull(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            drop(task, "shutting down");
+            return;
+        }
+        if (overflow == Overflow.DROP_OLDEST) {
+            Runnable oldest = queue.poll();
+            if (oldest != null) {
+                drop(oldest, "queue full, evicted oldest");
+            }
+            if (queue.offer(task)) {
+                return;
+            }
+        }
+        drop(task, "queue full");
+    }
+
+    private void drop(Runnable task, String reason) {
+        dropped.incrementAndGet();
+        if (task instanceof DeliveryTask deliveryTask) {
+            deliveryTask.dropped = true;
+            logger.warn("Dropped notification for order: {} ({})", deliveryTask.delivery.order().getId(), reason);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long sentCount = sent.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queueDepth", queue.size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("activeWorkers", workers.getActiveCount());
+        stats.put("pendingRetries", retries.getQueue().size());
+        stats.put("submitted", submitted.get());
+        stats.put("sent", sentCount);
+        stats.put("retried", retried.get());
+        stats.put("failed", failed.get());
+        stats.put("dropped", dropped.get());
+        // Dispatch lag: from order creation to notification-service accepting it, retries included
+        stats.put("lastLagMillis", lastLagNanos.get() / 1e6);
+        stats.put("avgLagMillis", sentCount == 0 ? 0.0 : lagNanos.get() / 1e6 / sentCount);
+        stats.put("maxLagMillis", maxLagNanos.get() / 1e6);
+        return stats;
+    }
+
+    // Cloud Run sends SIGTERM and allows ~10s: deliver what is queued, drop pending retries
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        int pendingRetries = retries.shutdownNow().size();
+        dropped.addAndGet(pendingRetries);
+        workers.shutdown();
+        if (!workers.awaitTermination(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            int lost = workers.shutdownNow().size();
+            logger.warn("Shutdown: {} queued notification(s) not sent", lost);
+        }
+        if (pendingRetries > 0) {
+            logger.warn("Shutdown: {} notification retry(ies) not attempted", pendingRetries);
+        }
+    }
+
+    private record Delivery(Order order, long enqueuedAt, int attempt) {
+
+        Delivery nextAttempt() {
+            return new Delivery(order, enqueuedAt, attempt + 1);
+        }
+    }
+
+    private class DeliveryTask implements Runnable {
+
+        private final Delivery delivery;
+        private volatile boolean dropped;
+
+        DeliveryTask(Delivery delivery) {
+            this.delivery = delivery;
+        }
+
+        @Override
+        public void run() {
+            deliver(delivery);
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.HashMap;
@@ -20,16 +21,23 @@ public class OrderController {
 
     private final FirestoreTemplate firestoreTemplate;
     private final RestTemplate restTemplate;
+    private final PooledConnectionManager connectionManager;
+    private final NotificationDispatcher notificationDispatcher;
 
     @Value("${inventory.service.url}")
     private String inventoryServiceUrl;
 
-    @Value("${notification.service.url}")
-    private String notificationServiceUrl;
-
-    public OrderController(FirestoreTemplate firestoreTemplate, RestTemplate restTemplate) {
+    public OrderController(FirestoreTemplate firestoreTemplate, RestTemplate restTemplate,
+                           PooledConnectionManager connectionManager,
+                           NotificationDispatcher notificationDispatcher) {
         this.firestoreTemplate = firestoreTemplate;
         this.restTemplate = restTemplate;
+        this.connectionManager = connectionManager;
+        this.notificationDispatcher = notificationDispatcher;
+    }
+
+    private enum Reservation {
+        RESERVED, INSUFFICIENT_STOCK, PRODUCT_NOT_FOUND, FAILED
     }
 
     @PostMapping
@@ -39,31 +47,28 @@ public class OrderController {
             String productId = (String) request.get("productId");
             int quantity = (Integer) request.get("quantity");
 
-            // 1. Check inventory
-            logger.info("Checking inventory for product: {}", productId);
-            boolean inventoryAvailable = checkInventory(productId, quantity);
-            if (!inventoryAvailable) {
+            // 1. Reserve inventory (stock check and decrement in one call)
+            logger.info("Reserving {} units of product: {}", quantity, productId);
+            Reservation reservation = reserveInventory(productId, quantity);
+            if (reservation == Reservation.INSUFFICIENT_STOCK) {
                 return ResponseEntity.badRequest().body(Map.of("error", "Insufficient stock"));
             }
-
-            // 2. Reserve inventory
-            logger.info("Reserving {} units of product: {}", quantity, productId);
-            boolean reserved = reserveInventory(productId, quantity);
-            if (!reserved) {
+            if (reservation == Reservation.PRODUCT_NOT_FOUND) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", "Product not found"));
+            }
+            if (reservation == Reservation.FAILED) {
                 return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                         .body(Map.of("error", "Failed to reserve inventory"));
             }
 
-            // 3. Create order
+            // 2. Create order
             Order order = new Order(customerId, productId, quantity, "CONFIRMED");
             Order savedOrder = firestoreTemplate.save(order);
             logger.info("Order created: {}", savedOrder.getId());
 
-            // 4. Send notification (async, don't fail if this fails)
-            try {
-                sendNotification(savedOrder);
-            } catch (Exception e) {
-                logger.error("Failed to send notification, but order is created", e);
+            // 3. Queue the notification; sent in the background, never fails the order
+            if (!notificationDispatcher.dispatch(savedOrder)) {
+                logger.warn("Notification queue full, order {} created without notification", savedOrder.getId());
             }
 
             return ResponseEntity.ok(savedOrder);
@@ -75,6 +80,13 @@ public class OrderController {
         }
     }
 
+    @GetMapping("/stats")
+    public Map<String, Object> stats() {
+        return Map.of(
+                "httpPool", connectionManager.stats(),
+                "notifications", notificationDispatcher.stats());
+    }
+
     @GetMapping("/{orderId}")
     public ResponseEntity<?> getOrder(@PathVariable String orderId) {
         try {
@@ -90,23 +102,8 @@ public class OrderController {
         }
     }
 
-    private boolean checkInventory(String productId, int quantity) {
-        try {
-            String url = inventoryServiceUrl + "/inventory/" + productId;
-            ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class);
-
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                int available = (Integer) response.getBody().get("quantity");
-                return available >= quantity;
-            }
-            return false;
-        } catch (Exception e) {
-            logger.error("Error checking inventory", e);
-            return false;
-        }
-    }
-
-    private boolean reserveInventory(String productId, int quantity) {
+    // inventory-service answers 409 (with the available quantity) or 404 when it can't reserve
+    private Reservation reserveInventory(String productId, int quantity) {
         try {
             String url = inventoryServiceUrl + "/inventory/reserve";
             Map<String, Object> request = new HashMap<>();
@@ -118,31 +115,28 @@ public class OrderController {
             HttpEntity<Map<String, Object>> entity = new HttpEntity<>(request, headers);
 
             ResponseEntity<Map> response = restTemplate.postForEntity(url, entity, Map.class);
-            return response.getStatusCode() == HttpStatus.OK;
+            if (response.getStatusCode() != HttpStatus.OK) {
+                return Reservation.FAILED;
+            }
+            logger.info("Reserved {} units of product: {}, {} left", quantity, productId, remaining(response.getBody()));
+            return Reservation.RESERVED;
+        } catch (HttpClientErrorException.Conflict e) {
+            logger.info("Cannot reserve {} units of product: {}: {}", quantity, productId, e.getResponseBodyAsString());
+            return Reservation.INSUFFICIENT_STOCK;
+        } catch (HttpClientErrorException.NotFound e) {
+            logger.info("Cannot reserve product: {}: not found", productId);
+            return Reservation.PRODUCT_NOT_FOUND;
         } catch (Exception e) {
             logger.error("Error reserving inventory", e);
-            return false;
+            return Reservation.FAILED;
         }
     }
 
-    private void sendNotification(Order order) {
-        try {
-            String url = notificationServiceUrl + "/notifications/order";
-            Map<String, Object> request = new HashMap<>();
-            request.put("orderId", order.getId());
-            request.put("customerId", order.getCustomerId());
-            request.put("productId", order.getProductId());
-            request.put("quantity", order.getQuantity());
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(request, headers);
-
-            restTemplate.postForEntity(url, entity, Map.class);
-            logger.info("Notification sent for order: {}", order.getId());
-        } catch (Exception e) {
-            logger.error("Error sending notification", e);
-            throw e;
+    // inventory-service sends remainingInShard instead of remaining when it only read one shard
+    private static Object remaining(Map<?, ?> body) {
+        if (body == null) {
+            return "?";
         }
+        return body.containsKey("remaining") ? body.get("remaining") : "at least " + body.get("remainingInShard");
     }
 }
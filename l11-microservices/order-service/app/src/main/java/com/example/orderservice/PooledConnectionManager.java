@@ -0,0 +1,88 @@
+package com.example.orderservice;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.client5.http.io.LeaseRequest;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Connection pool that also records how long callers wait for a connection and how
+// often a lease needs a new connection instead of reusing a kept-alive one
+public class PooledConnectionManager extends PoolingHttpClientConnectionManager {
+
+    private final AtomicLong leases = new AtomicLong();
+    private final AtomicLong connects = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    @Override
+    public LeaseRequest lease(String id, HttpRoute route, Timeout requestTimeout, Object state) {
+        LeaseRequest request = super.lease(id, route, requestTimeout, state);
+        long start = System.nanoTime();
+        return new LeaseRequest() {
+            @Override
+            public ConnectionEndpoint get(Timeout timeout)
+                    throws InterruptedException, ExecutionException, TimeoutException {
+                try {
+                    return request.get(timeout);
+                } finally {
+                    long waited = System.nanoTime() - start;
+                    leases.incrementAndGet();
+                    waitNanos.addAndGet(waited);
+                    maxWaitNanos.accumulateAndGet(waited, Math::max);
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return request.cancel();
+            }
+        };
+    }
+
+    // Only called for a fresh connection; a reused one is already connected
+    @Override
+    public void connect(ConnectionEndpoint endpoint, TimeValue timeout, HttpContext context) throws IOException {
+        connects.incrementAndGet();
+        super.connect(endpoint, timeout, context);
+    }
+
+    public Map<String, Object> stats() {
+        PoolStats total = getTotalStats();
+        long leaseCount = leases.get();
+        long connectCount = connects.get();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("leased", total.getLeased());
+        stats.put("pending", total.getPending());
+        stats.put("available", total.getAvailable());
+        stats.put("maxTotal", total.getMax());
+        stats.put("maxPerRoute", getDefaultMaxPerRoute());
+        stats.put("leases", leaseCount);
+        stats.put("connectionsOpened", connectCount);
+        stats.put("reuseRate", leaseCount == 0 ? 0.0 : 1.0 - (double) connectCount / leaseCount);
+        stats.put("avgWaitMillis", leaseCount == 0 ? 0.0 : waitNanos.get() / 1e6 / leaseCount);
+        stats.put("maxWaitMillis", maxWaitNanos.get() / 1e6);
+
+        Map<String, Object> routes = new LinkedHashMap<>();
+        for (HttpRoute route : getRoutes()) {
+            PoolStats routeStats = getStats(route);
+            routes.put(route.getTargetHost().toURI(), Map.of(
+                    "leased", routeStats.getLeased(),
+                    "pending", routeStats.getPending(),
+                    "available", routeStats.getAvailable()));
+        }
+        stats.put("routes", routes);
+        return stats;
+    }
+}
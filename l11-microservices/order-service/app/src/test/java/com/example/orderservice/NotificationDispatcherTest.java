@@ -0,0 +1,220 @@
+package com.example.orderservice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// RestTemplate is mocked; a post can be held on a latch to keep the single worker busy
+// while the queue fills up behind it
+class NotificationDispatcherTest {
+
+    private final List<Object> posted = new CopyOnWriteArrayList<>();
+    private final List<NotificationDispatcher> dispatchers = new ArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch posting = new CountDownLatch(1);
+
+    private RestTemplate restTemplate;
+
+    @BeforeEach
+    void setUp() {
+        restTemplate = mock(RestTemplate.class);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        release.countDown();
+        for (NotificationDispatcher dispatcher : dispatchers) {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    void serverErrorsAndTooManyRequestsAreRetried() {
+        when(restTemplate.postForEntity(anyString(), any(), eq(Map.class)))
+                .thenThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE))
+                .thenThrow(new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS))
+                .thenReturn(null);
+        NotificationDispatcher dispatcher = dispatcher(4, 10, NotificationDispatcher.Overflow.DROP_NEWEST, 4, Duration.ofMillis(1));
+
+        assertTrue(dispatcher.dispatch(order("o1")));
+
+        await(() -> count(dispatcher, "sent") == 1);
+        verify(restTemplate, times(3)).postForEntity(anyString(), any(), eq(Map.class));
+        assertEquals(2L, dispatcher.stats().get("retried"));
+        assertEquals(0L, dispatcher.stats().get("failed"));
+    }
+
+    @Test
+    void otherClientErrorsAreNotRetried() throws InterruptedException {
+        when(restTemplate.postForEntity(anyString(), any(), eq(Map.class)))
+                .thenThrow(new HttpClientErrorException(HttpStatus.BAD_REQUEST));
+        NotificationDispatcher dispatcher = dispatcher(4, 10, NotificationDispatcher.Overflow.DROP_NEWEST, 4, Duration.ofMillis(1));
+
+        dispatcher.dispatch(order("o1"));
+
+        await(() -> count(dispatcher, "failed") == 1);
+        Thread.sleep(50);
+        verify(restTemplate, times(1)).postForEntity(anyString(), any(), eq(Map.class));
+        assertEquals(0L, dispatcher.stats().get("retried"));
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        when(restTemplate.postForEntity(anyString(), any(), eq(Map.class)))
+                .thenThrow(new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR));
+        NotificationDispatcher dispatcher = dispatcher(4, 10, NotificationDispatcher.Overflow.DROP_NEWEST, 3, Duration.ofMillis(1));
+
+        dispatcher.dispatch(order("o1"));
+
+        await(() -> count(dispatcher, "failed") == 1);
+        verify(restTemplate, times(3)).postForEntity(anyString(), any(), eq(Map.class));
+        assertEquals(2L, dispatcher.stats().get("retried"));
+    }
+
+    @Test
+    void dropNewestRejectsTheNotificationThatDoesNotFit() throws InterruptedException {
+        holdPosts();
+        NotificationDispatcher dispatcher = dispatcher(1, 2, NotificationDispatcher.Overflow.DROP_NEWEST, 1, Duration.ofMillis(1));
+
+        assertTrue(dispatcher.dispatch(order("o1")));
+        assertTrue(posting.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.dispatch(order("o2")));
+        assertTrue(dispatcher.dispatch(order("o3")));
+        assertFalse(dispatcher.dispatch(order("o4")));
+        assertEquals(1L, dispatcher.stats().get("dropped"));
+
+        release.countDown();
+        await(() -> count(dispatcher, "sent") == 3);
+        assertEquals(List.of("o1", "o2", "o3"), posted);
+        assertEquals(4L, dispatcher.stats().get("submitted"));
+        assertEquals(1L, dispatcher.stats().get("dropped"));
+    }
+
+    @Test
+    void dropOldestEvictsTheLongestWaitingNotification() throws InterruptedException {
+        holdPosts();
+        NotificationDispatcher dispatcher = dispatcher(1, 2, NotificationDispatcher.Overflow.DROP_OLDEST, 1, Duration.ofMillis(1));
+
+        assertTrue(dispatcher.dispatch(order("o1")));
+        assertTrue(posting.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.dispatch(order("o2")));
+        assertTrue(dispatcher.dispatch(order("o3")));
+        assertTrue(dispatcher.dispatch(order("o4")));
+        assertEquals(1L, dispatcher.stats().get("dropped"));
+        assertEquals(2, dispatcher.stats().get("queueDepth"));
+
+        release.countDown();
+        await(() -> count(dispatcher, "sent") == 3);
+        assertEquals(List.of("o1", "o3", "o4"), posted);
+        assertEquals(1L, dispatcher.stats().get("dropped"));
+    }
+
+    @Test
+    void shutdownDropsPendingRetries() throws InterruptedException {
+        when(restTemplate.postForEntity(anyString(), any(), eq(Map.class)))
+                .thenThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE));
+        NotificationDispatcher dispatcher = dispatcher(4, 10, NotificationDispatcher.Overflow.DROP_NEWEST, 4, Duration.ofMinutes(1));
+
+        dispatcher.dispatch(order("o1"));
+        await(() -> count(dispatcher, "retried") == 1);
+        assertEquals(1, dispatcher.stats().get("pendingRetries"));
+
+        dispatcher.shutdown();
+
+        assertEquals(1L, dispatcher.stats().get("dropped"));
+        assertEquals(0L, dispatcher.stats().get("failed"));
+        verify(restTemplate, times(1)).postForEntity(anyString(), any(), eq(Map.class));
+    }
+
+    @Test
+    void dispatchDoesNotWaitForSlowPost() throws InterruptedException {
+        holdPosts();
+        NotificationDispatcher dispatcher = dispatcher(1, 10, NotificationDispatcher.Overflow.DROP_NEWEST, 1, Duration.ofMillis(1));
+
+        assertTimeout(Duration.ofMillis(500), () -> {
+            assertTrue(dispatcher.dispatch(order("o1")));
+            assertTrue(dispatcher.dispatch(order("o2")));
+        });
+        assertTrue(posting.await(5, TimeUnit.SECONDS));
+        assertEquals(0L, dispatcher.stats().get("sent"));
+        assertEquals(1, dispatcher.stats().get("activeWorkers"));
+
+        release.countDown();
+        await(() -> count(dispatcher, "sent") == 2);
+    }
+
+    // Every post records its order id, then blocks until the test releases it
+    private void holdPosts() {
+        doAnswer(invocation -> {
+            HttpEntity<Map<String, Object>> request = invocation.getArgument(1);
+            posted.add(request.getBody().get("orderId"));
+            posting.countDown();
+            if (!release.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("post was never released");
+            }
+            return null;
+        }).when(restTemplate).postForEntity(anyString(), any(), eq(Map.class));
+    }
+
+    private NotificationDispatcher dispatcher(int workers, int queueCapacity, NotificationDispatcher.Overflow overflow,
+                                              int maxAttempts, Duration initialBackoff) {
+        NotificationDispatcher dispatcher = new NotificationDispatcher(restTemplate, "http://notifications",
+                workers, queueCapacity, overflow, maxAttempts, initialBackoff, initialBackoff.multipliedBy(10),
+                Duration.ofSeconds(5));
+        dispatchers.add(dispatcher);
+        return dispatcher;
+    }
+
+    private static Order order(String id) {
+        Order order = new Order("customer-1", "product-1", 1, "CREATED");
+        order.setId(id);
+        return order;
+    }
+
+    private static long count(NotificationDispatcher dispatcher, String stat) {
+        return (Long) dispatcher.stats().get(stat);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("condition not met within 5s");
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("interrupted");
+            }
+        }
+    }
+}